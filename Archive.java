@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Export of a commit's files as a tar or zip archive, run by the archive
+ *  command.  Blobs go straight from the object store into the archive;
+ *  nothing is written to the working tree.  Entries are written in file
+ *  name order, each with the commit's time and mode 644, so the same
+ *  commit always gives the same bytes.
+ *  Reading is spread over THREADS threads: blobs of at most PREFETCH_SIZE
+ *  bytes are read ahead into memory, at most WINDOW per thread beyond the
+ *  one being written, while larger ones are streamed when their turn
+ *  comes.  Memory use is bounded by that window whatever the commit's
+ *  size.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class Archive {
+
+    /** The archive formats. */
+    static final String TAR = "tar";
+    static final String ZIP = "zip";
+
+    /** Blobs up to this size are read ahead; larger ones are streamed. */
+    private static final int PREFETCH_SIZE = 1 << 20;
+    /** Blobs read ahead per thread. */
+    private static final int WINDOW = 4;
+    private static final int BLOCK_SIZE = 512;
+
+    /** A blob's length, and its contents if it was read ahead. */
+    private record Contents(long size, byte[] bytes) {
+    }
+
+    /** An archive being written, one entry after another. */
+    private interface Writer {
+        /** Adds file NAME of SIZE bytes, read from CONTENTS. */
+        void add(String name, long size, InputStream contents) throws IOException;
+
+        /** Writes whatever ends the archive, leaving the output open. */
+        void finish() throws IOException;
+    }
+
+    /** The store blobs are read from. */
+    private final ObjectStore store;
+    private final int threads;
+
+    /** An exporter of the blobs in STORE, reading on THREADS threads. */
+    Archive(ObjectStore store, int threads) {
+        this.store = store;
+        this.threads = threads;
+    }
+
+    /** Writes the files of COMMIT to OUT as a FORMAT archive, TAR or ZIP.
+     *  OUT is flushed but not closed. */
+    void write(Commit commit, String format, OutputStream out) {
+        long start = Trace.start();
+        long mtime = commit.getTimestamp().getTime();
+        List<Map.Entry<String, String>> files = new ArrayList<>(commit.getBlobs().entrySet());
+        BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        Writer writer = format.equals(ZIP) ? zip(buffered, mtime) : tar(buffered, mtime);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long written = 0;
+        try {
+            Deque<Future<Contents>> ahead = new ArrayDeque<>();
+            int submitted = 0;
+            for (Map.Entry<String, String> file : files) {
+                for (; submitted < files.size() && ahead.size() <= WINDOW * threads; submitted += 1) {
+                    String id = files.get(submitted).getValue();
+                    ahead.add(pool.submit(() -> readAhead(id)));
+                }
+                Contents contents = ahead.remove().get();
+                try (InputStream in = contents.bytes() != null
+                        ? new ByteArrayInputStream(contents.bytes()) : store.openBlob(file.getValue())) {
+                    writer.add(file.getKey(), contents.size(), in);
+                }
+                written += contents.size();
+            }
+            writer.finish();
+            buffered.flush();
+        } catch (IOException | InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            pool.shutdownNow();
+        }
+        Trace.write(start, written);
+    }
+
+    /** The size of blob ID, with its contents if it is small enough. */
+    private Contents readAhead(String id) throws IOException {
+        long size = store.blobSize(id);
+        if (size > PREFETCH_SIZE) {
+            return new Contents(size, null);
+        }
+        try (InputStream in = store.openBlob(id)) {
+            return new Contents(size, in.readAllBytes());
+        }
+    }
+
+    /** A zip archive written to OUT whose entries were last modified at
+     *  MTIME.  Times are stored as UTC, so the output does not depend on
+     *  the local time zone. */
+    private static Writer zip(OutputStream out, long mtime) {
+        ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        LocalDateTime time = LocalDateTime.ofEpochSecond(Math.floorDiv(mtime, 1000), 0, ZoneOffset.UTC);
+        return new Writer() {
+            @Override
+            public void add(String name, long size, InputStream contents) throws IOException {
+                ZipEntry entry = new ZipEntry(name);
+                entry.setTimeLocal(time);
+                entry.setSize(size);
+                zip.putNextEntry(entry);
+                contents.transferTo(zip);
+                zip.closeEntry();
+            }
+
+            @Override
+            public void finish() throws IOException {
+                zip.finish();
+            }
+        };
+    }
+
+    /** A POSIX (ustar) tar archive written to OUT whose entries were last
+     *  modified at MTIME.  Names longer than the header's 100 bytes, and
+     *  sizes too large for it, go in a pax extended header first. */
+    private static Writer tar(OutputStream out, long mtime) {
+        long seconds = Math.floorDiv(mtime, 1000);
+        return new Writer() {
+            @Override
+            public void add(String name, long size, InputStream contents) throws IOException {
+                byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                String pax = "";
+                if (nameBytes.length > 100) {
+                    pax += paxRecord("path", name);
+                }
+                if (size >= 077777777777L) {
+                    pax += paxRecord("size", Long.toString(size));
+                }
+                if (!pax.isEmpty()) {
+                    byte[] paxBytes = pax.getBytes(StandardCharsets.UTF_8);
+                    out.write(tarHeader("PaxHeader", paxBytes.length, seconds, 'x'));
+                    out.write(paxBytes);
+                    pad(paxBytes.length);
+                }
+                out.write(tarHeader(name, size, seconds, '0'));
+                long copied = contents.transferTo(out);
+                if (copied != size) {
+                    throw new IOException("blob for " + name + " changed size while archived");
+                }
+                pad(size);
+            }
+
+            @Override
+            public void finish() throws IOException {
+                out.write(new byte[2 * BLOCK_SIZE]);
+            }
+
+            /** Fills the last block of an entry of LENGTH bytes with zeros. */
+            private void pad(long length) throws IOException {
+                int rest = (int) (length % BLOCK_SIZE);
+                if (rest > 0) {
+                    out.write(new byte[BLOCK_SIZE - rest]);
+                }
+            }
+        };
+    }
+
+    /** A ustar header block for an entry NAME of SIZE bytes, last modified
+     *  at SECONDS, of type TYPE.  Fields that do not fit are truncated, as
+     *  a pax header before it carries their full values. */
+    private static byte[] tarHeader(String name, long size, long seconds, char type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, Math.min(size, 077777777777L));
+        octal(header, 136, 12, seconds);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        // the checksum is taken with its own field as spaces
+        for (int i = 148; i < 156; i += 1) {
+            header[i] = ' ';
+        }
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /** Writes VALUE into the LENGTH bytes of HEADER at OFFSET as a
+     *  zero-padded octal numeral followed by a NUL. */
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        digits = "0".repeat(Math.max(0, length - 1 - digits.length())) + digits;
+        byte[] bytes = digits.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+
+    /** A pax record "<length> KEY=VALUE\n", whose length counts itself. */
+    private static String paxRecord(String key, String value) {
+        int body = key.getBytes(StandardCharsets.UTF_8).length
+                + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int length = body + Integer.toString(body).length();
+        if (Integer.toString(length).length() > Integer.toString(body).length()) {
+            length += 1;
+        }
+        return length + " " + key + "=" + value + "\n";
+    }
+}
@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Map;
+import java.util.function.Function;
+
+/** Line-by-line attribution of a file to the commits that last changed
+ *  each line.  Blame walks first parents back from a commit, diffing each
+ *  version of the file against the one before it only when their blob ids
+ *  differ, and hands each line that a version inserted to that version's
+ *  commit.  It stops as soon as every line is attributed.
+ *  Results are cached in .gitlet/blame, one file per (commit, path) pair.
+ *  The walk also stops at the first commit with a cached result and maps
+ *  the remaining lines through it, so blaming a file again after a few new
+ *  commits only diffs those.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class Blame {
+
+    /** key: commit id, value: Commit object */
+    private final Map<String, Commit> commits;
+    /** Returns the contents of a blob given its id. */
+    private final Function<String, String> blobContents;
+    /** The directory results are cached in. */
+    private final File cacheDir;
+    /** The object format cache file names are hashed with. */
+    private final String objectFormat;
+
+    Blame(Map<String, Commit> commits, Function<String, String> blobContents,
+          File cacheDir, String objectFormat) {
+        this.commits = commits;
+        this.blobContents = blobContents;
+        this.cacheDir = cacheDir;
+        this.objectFormat = objectFormat;
+    }
+
+    /** Returns, for each line of PATH as of commit HEADID, the id of the
+     *  commit that last changed it.  PATH must be tracked by that commit. */
+    String[] origins(String headId, String path) {
+        String commitId = headId;
+        Commit commit = commits.get(commitId);
+        String blobId = commit.getBlobs().get(path);
+        String[] lines = Diff.lines(blobContents.apply(blobId));
+
+        String[] origins = new String[lines.length];
+        // where each line of the head version is in the version being looked at
+        int[] position = new int[lines.length];
+        for (int i = 0; i < position.length; i += 1) {
+            position[i] = i;
+        }
+        int remaining = lines.length;
+        while (remaining > 0) {
+            String[] cached = readCache(commitId, path);
+            if (cached != null && cached.length == lines.length) {
+                if (commitId.equals(headId)) {
+                    return cached;
+                }
+                for (int i = 0; i < position.length; i += 1) {
+                    if (position[i] >= 0) {
+                        origins[i] = cached[position[i]];
+                    }
+                }
+                break;
+            }
+            Commit parent = commit.getParent() == null ? null : commits.get(commit.getParent());
+            String parentBlobId = parent == null ? null : parent.getBlobs().get(path);
+            if (parentBlobId == null) {
+                for (int i = 0; i < position.length; i += 1) {
+                    if (position[i] >= 0) {
+                        origins[i] = commitId;
+                    }
+                }
+                break;
+            }
+            if (!parentBlobId.equals(blobId)) {
+                String[] parentLines = Diff.lines(blobContents.apply(parentBlobId));
+                int[] kept = Diff.lineMap(parentLines, lines);
+                for (int i = 0; i < position.length; i += 1) {
+                    if (position[i] < 0) {
+                        continue;
+                    }
+                    position[i] = kept[position[i]];
+                    if (position[i] < 0) {
+                        origins[i] = commitId;
+                        remaining -= 1;
+                    }
+                }
+                lines = parentLines;
+                blobId = parentBlobId;
+            }
+            commit = parent;
+            commitId = parent.getCommitId();
+        }
+        writeCache(headId, path, origins);
+        return origins;
+    }
+
+    private File cacheFile(String commitId, String path) {
+        return Utils.join(cacheDir, Hashing.hash(objectFormat, commitId, "\0", path));
+    }
+
+    private String[] readCache(String commitId, String path) {
+        File file = cacheFile(commitId, path);
+        return file.isFile() ? Utils.readObject(file, String[].class) : null;
+    }
+
+    /** Serialization writes each distinct commit id in ORIGINS only once. */
+    private void writeCache(String commitId, String path, String[] origins) {
+        cacheDir.mkdir();
+        Utils.writeObject(cacheFile(commitId, path), origins);
+    }
+}
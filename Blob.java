@@ -1,11 +1,17 @@
 package gitlet;
 import java.io.File;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 /** Each blob is a unique snapshot of a file from a specific time.
+ * Blobs are stored under the id computed by Hashing.hashBlob.
  * @author Morgan Sinnock & Conrad Ehlers */
 
 public class Blob implements Serializable {
+
+    /** Pinned to the value Java derived for the original class, so that
+     *  repositories written before it was declared can still be read. */
+    private static final long serialVersionUID = -6516723334047544599L;
     /** holds the contents of the blob's associated file */
     private byte[] contents; //contents of file is a
     /** the file's name */
@@ -15,18 +21,23 @@ public class Blob implements Serializable {
 
     /** Blob constructor reads the contents of a file */
     public Blob(String fileName) {
+        this(new File(fileName));
+    }
+
+    /** Blob constructor reads the contents of FILE, which need not be in the
+     *  process's working directory */
+    public Blob(File file) {
         // reading our File as a string, then serializing it into a sha1 id byte array
-        this.contents = Utils.serialize(Utils.readContentsAsString(new File(fileName))); // check if works
+        this.contentsAsString = Utils.readContentsAsString(file);
+        this.contents = Utils.serialize(contentsAsString);
         // getName() returns the last name in the pathname's name sequence */
-        this.fileName = fileName;
-
-        this.contentsAsString = Utils.readContentsAsString(new File(fileName));
+        this.fileName = file.getName();
     }
 
-    public String getSha1() {
-        byte[] serializedBlob = Utils.serialize(this);
-        // hashing an extra word to distinguish blob id from commit id; same in getter for Commit class
-        return Utils.sha1(serializedBlob, "blob");
+    /** Blob holding the raw bytes CONTENTS, as read back from the object store */
+    public Blob(byte[] contents) {
+        this.contents = contents;
+        this.contentsAsString = new String(contents, StandardCharsets.UTF_8);
     }
 
     /** getter for Blob's contents */
@@ -1,4 +1,6 @@
 package gitlet;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -9,6 +11,10 @@ import java.util.*;
 
 public class Commit implements Serializable {
 
+    /** Pinned to the value Java derived for the original class, so that
+     *  repositories written before it was declared can still be read. */
+    private static final long serialVersionUID = 936301808163936453L;
+
     /** The message of this Commit. */
     private String message;
 
@@ -24,19 +30,30 @@ public class Commit implements Serializable {
     /** the sha1 id of commit's merge parent (useful for merge case) */
     private String mergeParent;
 
-    /** key = fileName, value = blob's sha1 id that has fileName's contents */
+    /** key = fileName, value = blob's sha1 id that has fileName's contents.
+     *  Only commits written before files existed have it; it is turned into
+     *  files as they are read. */
     private HashMap<String, String> blobs;
 
+    /** the commit's files and their blob ids, sharing unchanged chunks with
+     *  the parent's */
+    private FileTree files;
+
     private String id;
 
-    /** Constructor */
+    /** Constructor, for repositories using SHA-1 ids */
     public Commit(String message, String parent, String mergeParent) {
+        this(message, parent, mergeParent, Hashing.SHA1);
+    }
+
+    /** Constructor, for repositories whose object format is OBJECTFORMAT */
+    public Commit(String message, String parent, String mergeParent, String objectFormat) {
         this.message = message;
         this.parent = parent;
         this.timestamp = new Date(); // NOTE: no longer using data as a parameter in Commit constructor
-        this.blobs = new HashMap<>();
+        this.files = FileTree.EMPTY;
         this.mergeParent = mergeParent;
-        this.id = Utils.sha1(Utils.serialize(this));
+        this.id = Hashing.hash(objectFormat, Utils.serialize(this));
 
         // setting up initial commit
         if (message.equals("initial commit")) {
@@ -50,8 +67,16 @@ public class Commit implements Serializable {
         return this.parent;
     }
 
-    public void setBlobs(HashMap<String, String> blobs) {
-        this.blobs = blobs;
+    public void setBlobs(Map<String, String> blobs) {
+        this.files = FileTree.of(blobs);
+    }
+
+    void setFiles(FileTree files) {
+        this.files = files;
+    }
+
+    FileTree getFiles() {
+        return files;
     }
 
     /** get commit's parents as list of sha1 ids */
@@ -73,14 +98,24 @@ public class Commit implements Serializable {
         return mergeParent;
     }
 
-    /** get commit's blob references (see diagram in slides) */
-    public HashMap<String, String> getBlobs() {
-        return blobs;
+    /** get commit's blob references (see diagram in slides), as a read-only
+     *  view of its files */
+    public Map<String, String> getBlobs() {
+        return files.asMap();
     }
 
     public String getCommitId() {
         return id;
     }
+
+    /** Turns the blobs map of commits from older repositories into files. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (files == null) {
+            files = FileTree.of(blobs == null ? Map.of() : blobs);
+            blobs = null;
+        }
+    }
 }
 
 
@@ -0,0 +1,311 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/** The commit graph: for every commit, its parents, date and message, a
+ *  Bloom filter of the paths it changed relative to its first parent, and
+ *  the sorted 64-bit hashes of those paths, kept in .gitlet/commit-graph.
+ *  The file is small and read with a plain stream.  Path-limited history
+ *  skips the commits whose filter rules the path out and confirms the rest
+ *  against the hashes, so it need not load the commits map at all; only
+ *  commits that changed too many paths to record fall back to it.  The
+ *  graph records the state of the commits file it was built from and is
+ *  brought up to date, one new commit at a time, when that has changed.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class CommitGraph {
+
+    private static final String MAGIC = "gitlet-commit-graph";
+    private static final int VERSION = 2;
+
+    /** Filter bits per changed path, and hash functions per path: about a
+     *  1% false positive rate. */
+    private static final int BITS_PER_PATH = 10;
+    private static final int HASHES = 7;
+    /** Commits changing more paths than this get no filter or hashes, and
+     *  match every path. */
+    private static final int MAX_PATHS = 512;
+    /** Seed of the hashes kept of changed paths, unrelated to the filter's. */
+    private static final long PATH_SEED = 0x165667b19e3779f9L;
+
+    /** One commit of the graph. */
+    static class Entry {
+        private String id;
+        private String parent;
+        private String mergeParent;
+        private long timestamp;
+        private String message;
+        /** The changed-path filter, or null if every path may have changed. */
+        private long[] filter;
+        /** The sorted hashes of the changed paths, or null if there were
+         *  too many to record. */
+        private long[] pathHashes;
+
+        String getId() {
+            return id;
+        }
+
+        String getParent() {
+            return parent;
+        }
+
+        String getMergeParent() {
+            return mergeParent;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        String getMessage() {
+            return message;
+        }
+
+        /** False if this commit certainly did not change PATH. */
+        boolean mayChange(String path) {
+            return filter == null || mightContain(filter, path);
+        }
+
+        /** True iff changes() can tell whether this commit changed a path. */
+        boolean knowsChangedPaths() {
+            return pathHashes != null;
+        }
+
+        /** True iff this commit changed PATH, as far as 64-bit path hashes
+         *  tell; knowsChangedPaths() must be true. */
+        boolean changes(String path) {
+            return Arrays.binarySearch(pathHashes, hash(path, PATH_SEED)) >= 0;
+        }
+    }
+
+    /** Cache key of the commits file this graph was last brought up to date with. */
+    private String commitsKey = "";
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private boolean changed;
+
+    /** Returns the graph saved in FILE, or an empty one if there is none. */
+    static CommitGraph load(File file) {
+        CommitGraph graph = new CommitGraph();
+        if (!file.isFile()) {
+            return graph;
+        }
+        long start = Trace.start();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file.toPath())))) {
+            if (!in.readUTF().equals(MAGIC) || in.readInt() != VERSION) {
+                return graph;
+            }
+            graph.commitsKey = in.readUTF();
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 1) {
+                Entry entry = new Entry();
+                entry.id = in.readUTF();
+                entry.parent = emptyToNull(in.readUTF());
+                entry.mergeParent = emptyToNull(in.readUTF());
+                entry.timestamp = in.readLong();
+                byte[] message = new byte[in.readInt()];
+                in.readFully(message);
+                entry.message = new String(message, StandardCharsets.UTF_8);
+                entry.filter = readLongs(in);
+                entry.pathHashes = readLongs(in);
+                graph.entries.put(entry.id, entry);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        Trace.read(start, file.length());
+        return graph;
+    }
+
+    /** Saves this graph to FILE if it has changed, replacing it in one step. */
+    void save(File file) {
+        if (!changed) {
+            return;
+        }
+        long start = Trace.start();
+        Path temp = Utils.tempFileFor(file);
+        long size;
+        try {
+            size = write(temp);
+            Utils.replace(temp, file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        Trace.write(start, size);
+        changed = false;
+    }
+
+    /** Writes this graph to TEMP, returning the number of bytes written. */
+    private long write(Path temp) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temp)))) {
+            out.writeUTF(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(commitsKey);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                out.writeUTF(entry.id);
+                out.writeUTF(Objects.toString(entry.parent, ""));
+                out.writeUTF(Objects.toString(entry.mergeParent, ""));
+                out.writeLong(entry.timestamp);
+                byte[] message = entry.message.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(message.length);
+                out.write(message);
+                writeLongs(out, entry.filter);
+                writeLongs(out, entry.pathHashes);
+            }
+            return out.size();
+        }
+    }
+
+    /** Reads an array written by writeLongs. */
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        long[] result = new long[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = in.readLong();
+        }
+        return result;
+    }
+
+    /** Writes WORDS, which may be null, to OUT. */
+    private static void writeLongs(DataOutputStream out, long[] words) throws IOException {
+        if (words == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    /** True iff this graph was built from the commits file with cache key KEY. */
+    boolean isUpToDate(String key) {
+        return commitsKey.equals(key);
+    }
+
+    /** Brings this graph up to date with COMMITS, read from the commits file
+     *  with cache key KEY: commits no longer there are dropped and new ones
+     *  are added with filters of the paths they changed. */
+    void update(Map<String, Commit> commits, String key) {
+        changed |= entries.keySet().retainAll(commits.keySet());
+        for (Commit commit : commits.values()) {
+            if (entries.containsKey(commit.getCommitId())) {
+                continue;
+            }
+            Entry entry = new Entry();
+            entry.id = commit.getCommitId();
+            entry.parent = commit.getParent();
+            entry.mergeParent = commit.getMergeParent();
+            entry.timestamp = commit.getTimestamp().getTime();
+            entry.message = commit.getMessage();
+            Commit parent = commit.getParent() == null ? null : commits.get(commit.getParent());
+            Set<String> paths = FileTree.changedPaths(
+                    parent == null ? FileTree.EMPTY : parent.getFiles(), commit.getFiles());
+            if (paths.size() <= MAX_PATHS) {
+                entry.filter = filter(paths);
+                entry.pathHashes = pathHashes(paths);
+            }
+            entries.put(entry.id, entry);
+            changed = true;
+        }
+        changed |= !commitsKey.equals(key);
+        commitsKey = key;
+    }
+
+    /** The entry of commit ID, or null if it is not in the graph. */
+    Entry get(String id) {
+        return entries.get(id);
+    }
+
+    /** The paths whose blob ids differ between OLDBLOBS and NEWBLOBS. */
+    static Set<String> changedPaths(Map<String, String> oldBlobs, Map<String, String> newBlobs) {
+        Set<String> paths = new HashSet<>();
+        for (Map.Entry<String, String> entry : newBlobs.entrySet()) {
+            if (!entry.getValue().equals(oldBlobs.get(entry.getKey()))) {
+                paths.add(entry.getKey());
+            }
+        }
+        for (String path : oldBlobs.keySet()) {
+            if (!newBlobs.containsKey(path)) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /** Returns a Bloom filter of PATHS. */
+    static long[] filter(Collection<String> paths) {
+        long[] filter = new long[Math.max(1, (paths.size() * BITS_PER_PATH + 63) / 64)];
+        long bits = 64L * filter.length;
+        for (String path : paths) {
+            long h1 = hash(path, 0x9e3779b97f4a7c15L);
+            long h2 = hash(path, 0xc2b2ae3d27d4eb4fL) | 1;
+            for (int i = 0; i < HASHES; i += 1) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                filter[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        return filter;
+    }
+
+    /** The sorted hashes of PATHS. */
+    static long[] pathHashes(Collection<String> paths) {
+        long[] hashes = new long[paths.size()];
+        int i = 0;
+        for (String path : paths) {
+            hashes[i] = hash(path, PATH_SEED);
+            i += 1;
+        }
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    /** False if PATH is certainly not in FILTER. */
+    static boolean mightContain(long[] filter, String path) {
+        long bits = 64L * filter.length;
+        long h1 = hash(path, 0x9e3779b97f4a7c15L);
+        long h2 = hash(path, 0xc2b2ae3d27d4eb4fL) | 1;
+        for (int i = 0; i < HASHES; i += 1) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            if ((filter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** A 64-bit hash of PATH, different for each SEED. */
+    private static long hash(String path, long seed) {
+        long h = seed;
+        for (int i = 0; i < path.length(); i += 1) {
+            h = (h ^ path.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static String emptyToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+}
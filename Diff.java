@@ -0,0 +1,368 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line diffs in unified format.  Lines are first numbered so that equal
+ *  lines get equal ints and are compared as such.  The common prefix and
+ *  suffix are skipped, and lines that occur in only one of the two files
+ *  are marked changed at once and left out of the search, which keeps
+ *  files that differ almost everywhere from costing quadratic time.  What
+ *  is left goes to Myers' O(ND) algorithm in its linear-space form, which
+ *  finds the middle snake of a shortest edit script and recurses on both
+ *  halves.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class Diff {
+
+    /** Lines of unchanged context around each hunk. */
+    static final int CONTEXT = 3;
+
+    /** Bytes examined for a NUL when deciding whether a file is binary. */
+    private static final int BINARY_PROBE = 8000;
+
+    private static final byte EQUAL = 0;
+    private static final byte DELETE = 1;
+    private static final byte INSERT = 2;
+
+    /* THE SEARCH */
+
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] removed;
+    private final boolean[] added;
+    /** Furthest reaching x on each diagonal, forwards and backwards. */
+    private final int[] forward;
+    private final int[] backward;
+
+    /** Marks in REMOVED and ADDED the elements of A and B that are not in
+     *  a longest common subsequence of the two. */
+    private Diff(int[] a, int[] b, boolean[] removed, boolean[] added) {
+        this.a = a;
+        this.b = b;
+        this.removed = removed;
+        this.added = added;
+        int diagonals = a.length + b.length + 3;
+        forward = new int[2 * diagonals];
+        backward = new int[2 * diagonals];
+    }
+
+    /** Marks the changes between A[ALO..AHI) and B[BLO..BHI). */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j += 1) {
+                added[j] = true;
+            }
+        } else if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i += 1) {
+                removed[i] = true;
+            }
+        } else {
+            long split = middleSnake(aLo, aHi, bLo, bHi);
+            int x = (int) (split >>> 32);
+            int y = (int) split;
+            compare(aLo, x, bLo, y);
+            compare(x, aHi, y, bHi);
+        }
+    }
+
+    /** Returns a point on a shortest edit path from (ALO, BLO) to (AHI, BHI),
+     *  strictly between the two in cost, as x << 32 | y.  Both ranges are
+     *  non-empty and their first and last elements differ. */
+    private long middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int offset = n + m + 1;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int reverse = delta - k;
+                if (odd && reverse >= -(d - 1) && reverse <= d - 1
+                        && x + backward[offset + reverse] >= n) {
+                    return ((long) (aLo + x) << 32) | (bLo + y);
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                int ahead = delta - k;
+                if (!odd && ahead >= -d && ahead <= d && x + forward[offset + ahead] >= n) {
+                    return ((long) (aHi - x) << 32) | (bHi - y);
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /* EDIT SCRIPTS */
+
+    /** Returns the edit script turning OLDLINES into NEWLINES, one EQUAL,
+     *  DELETE or INSERT per line, deletions before insertions. */
+    static byte[] editScript(String[] oldLines, String[] newLines) {
+        HashMap<String, Integer> numbers = new HashMap<>();
+        int[] a = number(oldLines, numbers);
+        int[] b = number(newLines, numbers);
+        int[] inA = new int[numbers.size()];
+        int[] inB = new int[numbers.size()];
+        for (int line : a) {
+            inA[line] += 1;
+        }
+        for (int line : b) {
+            inB[line] += 1;
+        }
+
+        boolean[] removed = new boolean[a.length];
+        boolean[] added = new boolean[b.length];
+        int[] aIndex = new int[a.length];
+        int[] bIndex = new int[b.length];
+        int[] aKept = keep(a, inB, removed, aIndex);
+        int[] bKept = keep(b, inA, added, bIndex);
+        boolean[] keptRemoved = new boolean[aKept.length];
+        boolean[] keptAdded = new boolean[bKept.length];
+        new Diff(aKept, bKept, keptRemoved, keptAdded).compare(0, aKept.length, 0, bKept.length);
+        for (int i = 0; i < aKept.length; i += 1) {
+            removed[aIndex[i]] |= keptRemoved[i];
+        }
+        for (int j = 0; j < bKept.length; j += 1) {
+            added[bIndex[j]] |= keptAdded[j];
+        }
+
+        byte[] script = new byte[a.length + b.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && removed[i]) {
+                script[size] = DELETE;
+                i += 1;
+            } else if (j < b.length && added[j]) {
+                script[size] = INSERT;
+                j += 1;
+            } else {
+                script[size] = EQUAL;
+                i += 1;
+                j += 1;
+            }
+            size += 1;
+        }
+        byte[] result = new byte[size];
+        System.arraycopy(script, 0, result, 0, size);
+        return result;
+    }
+
+    /** Returns, for each line of NEWLINES, the index of the line of OLDLINES
+     *  it was kept from, or -1 if it was inserted. */
+    static int[] lineMap(String[] oldLines, String[] newLines) {
+        byte[] script = editScript(oldLines, newLines);
+        int[] map = new int[newLines.length];
+        int i = 0;
+        int j = 0;
+        for (byte op : script) {
+            if (op == DELETE) {
+                i += 1;
+            } else if (op == INSERT) {
+                map[j] = -1;
+                j += 1;
+            } else {
+                map[j] = i;
+                i += 1;
+                j += 1;
+            }
+        }
+        return map;
+    }
+
+    /** Returns LINES as numbers, equal lines getting equal numbers from NUMBERS. */
+    private static int[] number(String[] lines, HashMap<String, Integer> numbers) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            Integer number = numbers.get(lines[i]);
+            if (number == null) {
+                number = numbers.size();
+                numbers.put(lines[i], number);
+            }
+            result[i] = number;
+        }
+        return result;
+    }
+
+    /** Returns the elements of LINES that occur in the other file, whose
+     *  counts are OTHERCOUNTS, recording where each came from in INDEX and
+     *  marking the others in CHANGED. */
+    private static int[] keep(int[] lines, int[] otherCounts, boolean[] changed, int[] index) {
+        int size = 0;
+        for (int i = 0; i < lines.length; i += 1) {
+            if (otherCounts[lines[i]] == 0) {
+                changed[i] = true;
+            } else {
+                index[size] = i;
+                size += 1;
+            }
+        }
+        int[] kept = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            kept[i] = lines[index[i]];
+        }
+        return kept;
+    }
+
+    /* OUTPUT */
+
+    /** Splits CONTENTS into lines without their terminators.  A last line
+     *  without a newline gets one of its own, "\n\\", so that it differs from
+     *  the same line with one; print drops it again. */
+    static String[] lines(String contents) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int end = contents.indexOf('\n'); end >= 0; end = contents.indexOf('\n', start)) {
+            lines.add(contents.substring(start, end));
+            start = end + 1;
+        }
+        if (start < contents.length()) {
+            lines.add(contents.substring(start) + "\n\\");
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /** True iff CONTENTS looks binary: it has a NUL near the start. */
+    static boolean isBinary(String contents) {
+        return contents.substring(0, Math.min(contents.length(), BINARY_PROBE)).indexOf('\0') >= 0;
+    }
+
+    /** Prints the differences between OLDCONTENTS, the contents of file
+     *  OLDNAME, and NEWCONTENTS, the contents of NEWNAME, to OUT as a unified
+     *  diff.  A null name or contents stands for a file that does not exist.
+     *  Nothing is printed if the contents are the same. */
+    static void print(PrintStream out, String oldName, String oldContents,
+                      String newName, String newContents) {
+        print(out, oldName, oldContents, newName, newContents, null);
+    }
+
+    /** Like print above, but prints EXTENDEDHEADER, if not null, after the
+     *  first line, and prints the header even if the contents are the same. */
+    static void print(PrintStream out, String oldName, String oldContents,
+                      String newName, String newContents, String extendedHeader) {
+        String old = oldContents == null ? "" : oldContents;
+        String now = newContents == null ? "" : newContents;
+        if (extendedHeader == null && old.equals(now)
+                && (oldContents == null) == (newContents == null)) {
+            return;
+        }
+        String name = newName != null ? newName : oldName;
+        out.println("diff --gitlet a/" + (oldName != null ? oldName : name) + " b/" + name);
+        if (extendedHeader != null) {
+            out.println(extendedHeader);
+        }
+        if (oldContents == null) {
+            out.println("new file");
+        } else if (newContents == null) {
+            out.println("deleted file");
+        }
+        if (isBinary(old) || isBinary(now)) {
+            out.println("Binary files differ");
+            return;
+        }
+        if (old.equals(now)) {
+            return;
+        }
+        out.println("--- " + (oldContents == null ? "/dev/null" : "a/" + oldName));
+        out.println("+++ " + (newContents == null ? "/dev/null" : "b/" + newName));
+        String[] oldLines = lines(old);
+        String[] newLines = lines(now);
+        printHunks(out, editScript(oldLines, newLines), oldLines, newLines);
+    }
+
+    /** Prints the hunks of SCRIPT, which turns OLDLINES into NEWLINES. */
+    private static void printHunks(PrintStream out, byte[] script,
+                                   String[] oldLines, String[] newLines) {
+        int pos = 0;
+        int oldLine = 0;
+        int newLine = 0;
+        while (true) {
+            int change = pos;
+            while (change < script.length && script[change] == EQUAL) {
+                change += 1;
+            }
+            if (change == script.length) {
+                return;
+            }
+            int start = Math.max(pos, change - CONTEXT);
+            // unchanged lines skipped before the hunk
+            oldLine += start - pos;
+            newLine += start - pos;
+
+            int last = change;
+            int end = change + 1;
+            while (end < script.length && end - last <= 2 * CONTEXT + 1) {
+                if (script[end] != EQUAL) {
+                    last = end;
+                }
+                end += 1;
+            }
+            end = Math.min(script.length, last + CONTEXT + 1);
+
+            int oldCount = 0;
+            int newCount = 0;
+            for (int p = start; p < end; p += 1) {
+                oldCount += script[p] == INSERT ? 0 : 1;
+                newCount += script[p] == DELETE ? 0 : 1;
+            }
+            out.println("@@ -" + range(oldLine, oldCount) + " +" + range(newLine, newCount) + " @@");
+            for (int p = start; p < end; p += 1) {
+                if (script[p] == DELETE) {
+                    printLine(out, '-', oldLines[oldLine]);
+                    oldLine += 1;
+                } else if (script[p] == INSERT) {
+                    printLine(out, '+', newLines[newLine]);
+                    newLine += 1;
+                } else {
+                    printLine(out, ' ', oldLines[oldLine]);
+                    oldLine += 1;
+                    newLine += 1;
+                }
+            }
+            pos = end;
+        }
+    }
+
+    /** The hunk header range of COUNT lines after the first BEFORE. */
+    private static String range(int before, int count) {
+        return (count == 0 ? before : before + 1) + "," + count;
+    }
+
+    private static void printLine(PrintStream out, char prefix, String line) {
+        if (line.endsWith("\n\\")) {
+            out.println(prefix + line.substring(0, line.length() - 2));
+            out.println("\\ No newline at end of file");
+        } else {
+            out.println(prefix + line);
+        }
+    }
+}
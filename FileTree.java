@@ -0,0 +1,542 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** The files of a commit: an immutable map from file name to blob id.
+ *  Entries are sorted by the UTF-8 bytes of their names and cut into
+ *  chunks of at most CHUNK_SIZE.  Inside a chunk each name is stored as
+ *  the length of the prefix it shares with the name before it plus the
+ *  rest, and each hex id as its raw bytes, so a file costs a few dozen
+ *  bytes rather than a HashMap entry and two Strings.
+ *  A tree made from another by with() shares every chunk that holds no
+ *  changed file, so a commit only allocates the chunks its changes touch,
+ *  Java serialization writes a chunk shared by many commits once, and
+ *  changedPaths skips shared chunks without looking inside.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+final class FileTree implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The tree with no files. */
+    static final FileTree EMPTY = new FileTree(new Chunk[0]);
+
+    /** Most entries in one chunk.  Lookups decode a chunk up to the entry
+     *  they want, so chunks stay small. */
+    static final int CHUNK_SIZE = 32;
+
+    /** A run of consecutive entries. */
+    private static final class Chunk implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** The UTF-8 bytes of the first name, for finding the chunk. */
+        private final byte[] first;
+        private final int count;
+        /** Per entry: shared prefix length, suffix length and suffix bytes of
+         *  the name, then the id: its length tagged as raw hex bytes or
+         *  plain UTF-8, and its bytes.  Lengths are varints. */
+        private final byte[] data;
+
+        private Chunk(byte[] first, int count, byte[] data) {
+            this.first = first;
+            this.count = count;
+            this.data = data;
+        }
+    }
+
+    private final Chunk[] chunks;
+    private final int size;
+    /** The chunks' first names end to end, and where each starts, built
+     *  when first needed. */
+    private transient byte[] firstNames;
+    private transient int[] firstOffsets;
+
+    private FileTree(Chunk[] chunks) {
+        this.chunks = chunks;
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.count;
+        }
+        this.size = total;
+    }
+
+    /** Returns the tree holding the entries of FILES. */
+    static FileTree of(Map<String, String> files) {
+        return EMPTY.with(files, List.of());
+    }
+
+    /** The number of files. */
+    int size() {
+        return size;
+    }
+
+    /** The blob id of file NAME, or null if there is no such file. */
+    String get(String name) {
+        if (chunks.length == 0) {
+            return null;
+        }
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int index = chunkFor(key);
+        if (index < 0) {
+            return null;
+        }
+        Cursor cursor = new Cursor(chunks[index]);
+        return cursor.find(key) ? cursor.id() : null;
+    }
+
+    /** Returns a tree with the entries of PUTS added or replaced and the
+     *  files named in REMOVALS left out, even if also in PUTS.  Only the
+     *  chunks holding those names are rebuilt; the rest are shared with
+     *  this tree. */
+    FileTree with(Map<String, String> puts, Collection<String> removals) {
+        if (puts.isEmpty() && removals.isEmpty()) {
+            return this;
+        }
+        // changes by chunk, each in name order; a null id removes the file
+        TreeMap<byte[], String> changes = new TreeMap<>(Arrays::compareUnsigned);
+        for (Map.Entry<String, String> entry : puts.entrySet()) {
+            changes.put(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue());
+        }
+        for (String name : removals) {
+            changes.put(name.getBytes(StandardCharsets.UTF_8), null);
+        }
+
+        List<Chunk> result = new ArrayList<>(chunks.length + changes.size() / CHUNK_SIZE + 1);
+        Iterator<Map.Entry<byte[], String>> pending = changes.entrySet().iterator();
+        Map.Entry<byte[], String> change = pending.next();
+        int i = 0;
+        while (i < chunks.length || change != null) {
+            // entries before chunk I + 1 belong to chunk I (or to the first chunk)
+            byte[] limit = i + 1 < chunks.length ? chunks[i + 1].first : null;
+            if (change == null || (limit != null
+                    && Arrays.compareUnsigned(change.getKey(), limit) >= 0)) {
+                result.add(chunks[i]);
+                i += 1;
+                continue;
+            }
+            List<byte[]> names = new ArrayList<>();
+            List<String> ids = new ArrayList<>();
+            Cursor cursor = i < chunks.length ? new Cursor(chunks[i]) : null;
+            boolean more = cursor != null && cursor.next();
+            while (more || (change != null && (limit == null
+                    || Arrays.compareUnsigned(change.getKey(), limit) < 0))) {
+                boolean changeInRange = change != null && (limit == null
+                        || Arrays.compareUnsigned(change.getKey(), limit) < 0);
+                int c = !more ? 1 : !changeInRange ? -1 : cursor.compareName(change.getKey());
+                if (c < 0) {
+                    names.add(cursor.nameBytes());
+                    ids.add(cursor.id());
+                    more = cursor.next();
+                    continue;
+                }
+                if (change.getValue() != null) {
+                    names.add(change.getKey());
+                    ids.add(change.getValue());
+                }
+                if (c == 0) {
+                    more = cursor.next();
+                }
+                change = pending.hasNext() ? pending.next() : null;
+            }
+            encode(names, ids, result);
+            i += 1;
+        }
+        return new FileTree(result.toArray(new Chunk[0]));
+    }
+
+    /** The names whose ids differ between OLDTREE and NEWTREE, including
+     *  names in only one of them.  Chunks the trees share are skipped. */
+    static Set<String> changedPaths(FileTree oldTree, FileTree newTree) {
+        Set<String> paths = new HashSet<>();
+        Walker x = new Walker(oldTree);
+        Walker y = new Walker(newTree);
+        while (!x.done() || !y.done()) {
+            if (!x.done() && !y.done() && x.atChunkStart() && y.atChunkStart()
+                    && x.chunk() == y.chunk()) {
+                x.skipChunk();
+                y.skipChunk();
+                continue;
+            }
+            int c = x.done() ? 1 : y.done() ? -1 : x.cursor.compareName(y.cursor);
+            if (c < 0) {
+                paths.add(x.cursor.name());
+                x.advance();
+            } else if (c > 0) {
+                paths.add(y.cursor.name());
+                y.advance();
+            } else {
+                if (!x.cursor.sameId(y.cursor)) {
+                    paths.add(x.cursor.name());
+                }
+                x.advance();
+                y.advance();
+            }
+        }
+        return paths;
+    }
+
+    /** Estimated heap size of this tree, counting shared chunks in full. */
+    long weight() {
+        long weight = 32 + 8L * chunks.length;
+        for (Chunk chunk : chunks) {
+            weight += 64 + chunk.first.length + chunk.data.length;
+        }
+        return weight;
+    }
+
+    /** A read-only Map view of this tree, iterating in name order. */
+    Map<String, String> asMap() {
+        return new AbstractMap<>() {
+            @Override
+            public String get(Object key) {
+                return key instanceof String ? FileTree.this.get((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Set<Map.Entry<String, String>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Map.Entry<String, String>> iterator() {
+                        Walker walker = new Walker(FileTree.this);
+                        return new Iterator<>() {
+                            @Override
+                            public boolean hasNext() {
+                                return !walker.done();
+                            }
+
+                            @Override
+                            public Map.Entry<String, String> next() {
+                                if (walker.done()) {
+                                    throw new NoSuchElementException();
+                                }
+                                Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<>(
+                                        walker.cursor.name(), walker.cursor.id());
+                                walker.advance();
+                                return entry;
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        };
+    }
+
+    /** The index of the chunk that would hold KEY, or -1 if KEY sorts
+     *  before every name. */
+    private int chunkFor(byte[] key) {
+        if (firstNames == null) {
+            indexFirstNames();
+        }
+        int lo = 0;
+        int hi = chunks.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Arrays.compareUnsigned(firstNames, firstOffsets[mid], firstOffsets[mid + 1],
+                    key, 0, key.length) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi;
+    }
+
+    /** Copies the chunks' first names into one array, which a binary
+     *  search walks with far fewer cache misses than the chunks themselves. */
+    private void indexFirstNames() {
+        int[] offsets = new int[chunks.length + 1];
+        for (int k = 0; k < chunks.length; k += 1) {
+            offsets[k + 1] = offsets[k] + chunks[k].first.length;
+        }
+        byte[] names = new byte[offsets[chunks.length]];
+        for (int k = 0; k < chunks.length; k += 1) {
+            System.arraycopy(chunks[k].first, 0, names, offsets[k], chunks[k].first.length);
+        }
+        firstOffsets = offsets;
+        firstNames = names;
+    }
+
+    /** Appends chunks of the sorted entries NAMES and IDS to RESULT, split
+     *  evenly so that none holds more than CHUNK_SIZE. */
+    private static void encode(List<byte[]> names, List<String> ids, List<Chunk> result) {
+        int pieces = (names.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        for (int p = 0; p < pieces; p += 1) {
+            int from = (int) ((long) names.size() * p / pieces);
+            int to = (int) ((long) names.size() * (p + 1) / pieces);
+            ByteArrayOutputStream data = new ByteArrayOutputStream(32 * (to - from));
+            byte[] previous = new byte[0];
+            for (int k = from; k < to; k += 1) {
+                byte[] name = names.get(k);
+                int shared = Arrays.mismatch(previous, name);
+                if (shared < 0) {
+                    shared = name.length;
+                }
+                shared = Math.min(shared, Math.min(previous.length, name.length));
+                writeVarint(data, shared);
+                writeVarint(data, name.length - shared);
+                data.write(name, shared, name.length - shared);
+                writeId(data, ids.get(k));
+                previous = name;
+            }
+            result.add(new Chunk(names.get(from), to - from, data.toByteArray()));
+        }
+    }
+
+    /** Writes ID as raw bytes if it is lowercase hex, and as UTF-8 otherwise. */
+    private static void writeId(ByteArrayOutputStream out, String id) {
+        if (isHex(id)) {
+            writeVarint(out, id.length() / 2 << 1);
+            for (int k = 0; k < id.length(); k += 2) {
+                out.write(Character.digit(id.charAt(k), 16) << 4 | Character.digit(id.charAt(k + 1), 16));
+            }
+        } else {
+            byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length << 1 | 1);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static boolean isHex(String id) {
+        if (id.length() % 2 != 0) {
+            return false;
+        }
+        for (int k = 0; k < id.length(); k += 1) {
+            char ch = id.charAt(k);
+            if ((ch < '0' || ch > '9') && (ch < 'a' || ch > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Reads the entries of one chunk in order, keeping the current name
+     *  in a reused buffer. */
+    private static final class Cursor {
+        private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+        private final Chunk chunk;
+        private int pos;
+        private int read;
+        private byte[] name = new byte[0];
+        private int nameLength;
+        private int idStart;
+        private int idLength;
+        private boolean idHex;
+
+        Cursor(Chunk chunk) {
+            this.chunk = chunk;
+        }
+
+        /** Moves to the next entry, returning false if there is none. */
+        boolean next() {
+            if (read == chunk.count) {
+                return false;
+            }
+            read += 1;
+            int shared = readVarint();
+            int suffix = readVarint();
+            if (shared + suffix > name.length) {
+                name = Arrays.copyOf(name, Math.max(64, Math.max(2 * name.length, shared + suffix)));
+            }
+            System.arraycopy(chunk.data, pos, name, shared, suffix);
+            nameLength = shared + suffix;
+            pos += suffix;
+            int code = readVarint();
+            idHex = (code & 1) == 0;
+            idLength = code >>> 1;
+            idStart = pos;
+            pos += idLength;
+            return true;
+        }
+
+        /** Moves to the entry named KEY, returning false if there is none.
+         *  Names are compared where they differ from the name before them
+         *  only, and never copied. */
+        boolean find(byte[] key) {
+            byte[] data = chunk.data;
+            int p = pos;
+            // how much of KEY the name before this entry matched
+            int matched = 0;
+            for (int n = read; n < chunk.count; n += 1) {
+                int shared = data[p++];
+                if (shared < 0) {
+                    pos = p - 1;
+                    shared = readVarint();
+                    p = pos;
+                }
+                int suffix = data[p++];
+                if (suffix < 0) {
+                    pos = p - 1;
+                    suffix = readVarint();
+                    p = pos;
+                }
+                int suffixStart = p;
+                p += suffix;
+                int code = data[p++];
+                if (code < 0) {
+                    pos = p - 1;
+                    code = readVarint();
+                    p = pos;
+                }
+                p += code >>> 1;
+                if (shared < matched) {
+                    // this name rises above the one before where that one still matched KEY
+                    return false;
+                } else if (shared > matched) {
+                    // this name still falls below KEY where the one before did
+                    continue;
+                }
+                int m = 0;
+                int rest = key.length - matched;
+                while (m < suffix && m < rest && data[suffixStart + m] == key[matched + m]) {
+                    m += 1;
+                }
+                if (m == suffix && m == rest) {
+                    read = n + 1;
+                    pos = p;
+                    idHex = (code & 1) == 0;
+                    idLength = code >>> 1;
+                    idStart = p - idLength;
+                    return true;
+                }
+                if (m == suffix || (m < rest
+                        && (data[suffixStart + m] & 0xff) < (key[matched + m] & 0xff))) {
+                    matched += m;
+                } else {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /** Compares the current name with KEY, in unsigned byte order. */
+        int compareName(byte[] key) {
+            return Arrays.compareUnsigned(name, 0, nameLength, key, 0, key.length);
+        }
+
+        int compareName(Cursor other) {
+            return Arrays.compareUnsigned(name, 0, nameLength, other.name, 0, other.nameLength);
+        }
+
+        boolean sameId(Cursor other) {
+            return idHex == other.idHex && Arrays.equals(chunk.data, idStart, idStart + idLength,
+                    other.chunk.data, other.idStart, other.idStart + other.idLength);
+        }
+
+        byte[] nameBytes() {
+            return Arrays.copyOf(name, nameLength);
+        }
+
+        String name() {
+            return new String(name, 0, nameLength, StandardCharsets.UTF_8);
+        }
+
+        String id() {
+            if (!idHex) {
+                return new String(chunk.data, idStart, idLength, StandardCharsets.UTF_8);
+            }
+            byte[] hex = new byte[2 * idLength];
+            for (int k = 0; k < idLength; k += 1) {
+                int b = chunk.data[idStart + k] & 0xff;
+                hex[2 * k] = HEX[b >>> 4];
+                hex[2 * k + 1] = HEX[b & 0xf];
+            }
+            return new String(hex, StandardCharsets.ISO_8859_1);
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = chunk.data[pos++];
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /** Walks every entry of a tree in order, chunk by chunk. */
+    private static final class Walker {
+        private final FileTree tree;
+        private int index = -1;
+        private Cursor cursor;
+        private boolean atStart;
+
+        Walker(FileTree tree) {
+            this.tree = tree;
+            nextChunk();
+        }
+
+        boolean done() {
+            return cursor == null;
+        }
+
+        boolean atChunkStart() {
+            return atStart;
+        }
+
+        Chunk chunk() {
+            return tree.chunks[index];
+        }
+
+        void advance() {
+            atStart = false;
+            if (!cursor.next()) {
+                nextChunk();
+            }
+        }
+
+        void skipChunk() {
+            nextChunk();
+        }
+
+        private void nextChunk() {
+            index += 1;
+            if (index >= tree.chunks.length) {
+                cursor = null;
+                return;
+            }
+            cursor = new Cursor(tree.chunks[index]);
+            cursor.next();
+            atStart = true;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/** Integrity check of a repository, run by the fsck command.
+ *  Every object in the store is read back and rehashed, spread over
+ *  THREADS threads that each take the next object from a shared counter.
+ *  Objects are streamed through Hashing's fixed-size buffer, so memory use
+ *  does not depend on their size.  Blobs stored as serialized Blob objects
+ *  by older repositories have ids that cannot be recomputed from their
+ *  contents; for those it is only checked that they can be read.
+ *  Then every commit's parents and every blob id it or the staging area
+ *  refers to must exist, where a blob the promisor has counts as present
+ *  and the parents a shallow clone left out are not looked for, and every
+ *  ref (the head, the current branch and each branch) must name a commit.
+ *  Nothing is changed; problems are collected as messages.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class Fsck {
+
+    /** The store whose objects are checked. */
+    private final ObjectStore store;
+    private final String objectFormat;
+    private final int threads;
+
+    /** The sorted ids of all objects in the store, once checkObjects has run. */
+    private String[] index = new String[0];
+
+    private final List<String> problems = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger legacyObjects = new AtomicInteger();
+    private long objectNanos;
+    private int commitsChecked;
+    private int refsChecked;
+
+    /** A check of the objects in STORE, whose ids are OBJECTFORMAT hashes,
+     *  that rehashes them on THREADS threads. */
+    Fsck(ObjectStore store, String objectFormat, int threads) {
+        this.store = store;
+        this.objectFormat = objectFormat;
+        this.threads = threads;
+    }
+
+    /** Rehashes every object in the store. */
+    void checkObjects() {
+        long start = System.nanoTime();
+        index = store.ids().toArray(new String[0]);
+        // sorted, objects in the same fan-out directory are read together
+        Arrays.sort(index);
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t += 1) {
+                workers.add(pool.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < index.length; i = next.getAndIncrement()) {
+                        checkObject(index[i]);
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (Exception excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            pool.shutdown();
+        }
+        objectNanos = System.nanoTime() - start;
+    }
+
+    private void checkObject(String id) {
+        File object = store.find(id);
+        try {
+            long length = object.length();
+            if (ObjectStore.isRaw(object)) {
+                String actual = Hashing.hashFile(objectFormat, object);
+                if (!actual.equals(id)) {
+                    problem("corrupt object " + id + ": its contents hash to " + actual);
+                }
+            } else {
+                Utils.readObject(object, Blob.class);
+                legacyObjects.incrementAndGet();
+            }
+            bytes.addAndGet(length);
+        } catch (IllegalArgumentException excp) {
+            problem("unreadable object " + id);
+        }
+    }
+
+    /** Checks the parents and blobs of every commit in COMMITS, keyed by
+     *  id.  The commits in SHALLOW may be missing their parents. */
+    void checkCommits(Map<String, Commit> commits, Set<String> shallow) {
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<String, Commit> entry : commits.entrySet()) {
+            String id = entry.getKey();
+            Commit commit = entry.getValue();
+            commitsChecked += 1;
+            if (!id.equals(commit.getCommitId())) {
+                problem("commit " + id + " is stored with id " + commit.getCommitId());
+            }
+            for (String parent : Arrays.asList(commit.getParent(), commit.getMergeParent())) {
+                if (parent != null && !commits.containsKey(parent) && !shallow.contains(id)) {
+                    problem("commit " + id + ": missing parent " + parent);
+                }
+            }
+            for (Map.Entry<String, String> file : commit.getBlobs().entrySet()) {
+                if (seen.add(file.getValue()) && !hasObject(file.getValue())) {
+                    problem("commit " + id + ": missing blob " + file.getValue()
+                            + " for " + file.getKey());
+                }
+            }
+        }
+    }
+
+    /** Checks that the blobs in FILESTOADD, the staged names and ids, exist. */
+    void checkStaged(Map<String, String> filesToAdd) {
+        for (Map.Entry<String, String> file : filesToAdd.entrySet()) {
+            if (!hasObject(file.getValue())) {
+                problem("staging area: missing blob " + file.getValue() + " for " + file.getKey());
+            }
+        }
+    }
+
+    /** Checks that ref NAME, which points to commit ID, names one of COMMITS. */
+    void checkRef(String name, String id, Map<String, Commit> commits) {
+        refsChecked += 1;
+        if (!commits.containsKey(id)) {
+            problem("ref " + name + " points to missing commit " + id);
+        }
+    }
+
+    /** Returns what READER reads, or records that WHAT cannot be read and
+     *  returns null. */
+    <T> T read(String what, Supplier<T> reader) {
+        try {
+            return reader.get();
+        } catch (IllegalArgumentException excp) {
+            problem("unreadable " + what);
+            return null;
+        }
+    }
+
+    /** Records PROBLEM. */
+    void problem(String problem) {
+        problems.add(problem);
+    }
+
+    /** True iff blob ID is in the store or can be fetched from the promisor. */
+    private boolean hasObject(String id) {
+        return Arrays.binarySearch(index, id) >= 0 || store.promised(id);
+    }
+
+    /** What was checked and the problems found, in sorted order. */
+    GitletRepository.FsckResult result() {
+        List<String> sorted = new ArrayList<>(problems);
+        Collections.sort(sorted);
+        return new GitletRepository.FsckResult(index.length, bytes.get(), legacyObjects.get(),
+                commitsChecked, refsChecked, threads, objectNanos, sorted);
+    }
+}
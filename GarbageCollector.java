@@ -0,0 +1,152 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+/** Mark-and-sweep collection of objects that are no longer reachable.
+ *  Marking ORs together the reachability bitmaps of the given roots (see
+ *  ReachabilityIndex), then flags the objects they contain in a BitSet
+ *  indexed by position in a sorted array of the object ids in the store,
+ *  so the only per-object state is one bit.
+ *  Commits younger than the grace period count as roots as well, so that
+ *  everything they reach survives with them.
+ *  Sweeping deletes unmarked objects whose files are older than the grace
+ *  period, at most LIMIT of them per run so that large stores can be
+ *  collected incrementally, and drops the unmarked commits from the
+ *  commits map.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class GarbageCollector {
+
+    /** Objects younger than this are never collected: two weeks. */
+    static final long DEFAULT_GRACE_MILLIS = 14L * 24 * 60 * 60 * 1000;
+
+    /** The store holding the loose objects. */
+    private final ObjectStore store;
+    /** key: commit id, value: commit; unreachable entries are removed */
+    private final HashMap<String, Commit> commits;
+    /** Bitmaps of what each commit reaches */
+    private final ReachabilityIndex reachability;
+    private final long graceMillis;
+    private final int limit;
+
+    private int objectsRemoved;
+    private long bytesReclaimed;
+    private int objectsDeferred;
+    private int commitsRemoved;
+
+    /** A collector over the objects in STORE and the commits in COMMITS,
+     *  whose reachability is given by REACHABILITY, that spares anything
+     *  modified in the last GRACEMILLIS milliseconds and deletes at most
+     *  LIMIT objects per run. */
+    GarbageCollector(ObjectStore store, HashMap<String, Commit> commits,
+                     ReachabilityIndex reachability, long graceMillis, int limit) {
+        this.store = store;
+        this.commits = commits;
+        this.reachability = reachability;
+        this.graceMillis = graceMillis;
+        this.limit = limit;
+    }
+
+    /** Collects everything not reachable from the commits in ROOTS or
+     *  referenced by the blob ids in STAGEDBLOBS. */
+    void run(Collection<String> roots, Collection<String> stagedBlobs) {
+        String[] index = objectIndex();
+        BitSet marked = new BitSet(index.length);
+        long cutoff = System.currentTimeMillis() - graceMillis;
+
+        BitSet reachable = reachable(roots);
+        // a commit the grace period keeps is a root too, so its ancestors
+        // and blobs are kept with it however old they are
+        for (Map.Entry<String, Commit> entry : commits.entrySet()) {
+            if (entry.getValue().getTimestamp().getTime() > cutoff
+                    && !reachable.get(reachability.position(entry.getKey()))) {
+                reachable.or(reachability.reachable(entry.getKey(), commits));
+            }
+        }
+        for (int i = 0; i < index.length; i += 1) {
+            if (reachability.contains(index[i])
+                    && reachable.get(reachability.position(index[i]))) {
+                marked.set(i);
+            }
+        }
+        for (String blobId : stagedBlobs) {
+            mark(index, marked, blobId);
+        }
+
+        for (int i = marked.nextClearBit(0); i < index.length; i = marked.nextClearBit(i + 1)) {
+            File object = store.find(index[i]);
+            if (object.lastModified() > cutoff) {
+                continue;
+            }
+            if (objectsRemoved >= limit) {
+                objectsDeferred += 1;
+                continue;
+            }
+            long length = object.length();
+            if (object.delete()) {
+                objectsRemoved += 1;
+                bytesReclaimed += length;
+            }
+        }
+
+        Iterator<Map.Entry<String, Commit>> it = commits.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Commit> entry = it.next();
+            if (!reachable.get(reachability.position(entry.getKey()))) {
+                it.remove();
+                commitsRemoved += 1;
+            }
+        }
+    }
+
+    /** Returns the positions of everything reachable from the commits in
+     *  ROOTS through parent and merge parent links. */
+    BitSet reachable(Collection<String> roots) {
+        BitSet reachable = new BitSet();
+        for (String root : new HashSet<>(roots)) {
+            if (commits.containsKey(root)) {
+                reachable.or(reachability.reachable(root, commits));
+            }
+        }
+        return reachable;
+    }
+
+    /** Returns the sorted ids of all objects in the store. */
+    private String[] objectIndex() {
+        String[] ids = store.ids().toArray(new String[0]);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /** Sets the bit of object ID in MARKED, if ID is in INDEX. */
+    private static void mark(String[] index, BitSet marked, String id) {
+        int pos = Arrays.binarySearch(index, id);
+        if (pos >= 0) {
+            marked.set(pos);
+        }
+    }
+
+    // getters
+    int getObjectsRemoved() {
+        return objectsRemoved;
+    }
+
+    long getBytesReclaimed() {
+        return bytesReclaimed;
+    }
+
+    int getObjectsDeferred() {
+        return objectsDeferred;
+    }
+
+    int getCommitsRemoved() {
+        return commitsRemoved;
+    }
+}
@@ -0,0 +1,338 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/** A gitlet repository, for use as a library.  Failures are reported by
+ *  throwing a GitletException carrying the message the command line would
+ *  print, results are returned as values rather than printed, and nothing
+ *  here exits the JVM, so one process can run any number of operations on
+ *  any number of repositories.  Methods that change the repository hold
+ *  its writer lock (see RepositoryLock) while they run; the others take no
+ *  lock.  A linked working tree (see worktreeAdd) is opened like any other
+ *  and shares the lock of the repository it belongs to.  Main is the
+ *  command line over this class.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+public final class GitletRepository {
+
+    /** A commit: its id, parent ids (null where absent), time and message. */
+    public record CommitInfo(String id, String parent, String mergeParent,
+                             Instant timestamp, String message) {
+
+        static CommitInfo of(Commit commit) {
+            return new CommitInfo(commit.getCommitId(), commit.getParent(),
+                    commit.getMergeParent(), commit.getTimestamp().toInstant(),
+                    commit.getMessage());
+        }
+    }
+
+    /** A staged file that is a renamed committed one. */
+    public record Rename(String from, String to) {
+    }
+
+    /** What status reports: the branches, each list in name order. */
+    public record Status(String currentBranch, List<String> branches, List<String> staged,
+                         List<String> removed, List<Rename> renamed) {
+    }
+
+    /** Line NUMBER (from 1) of a file, TEXT, and the commit that last changed it. */
+    public record BlameLine(int number, String text, String commitId, Instant timestamp) {
+    }
+
+    /** What a gc run deleted, and how many unreachable objects it left for later. */
+    public record GcResult(int objectsRemoved, long bytesReclaimed, int commitsRemoved,
+                           int objectsDeferred) {
+    }
+
+    /** What fsck checked: OBJECTS objects of BYTES bytes, LEGACYOBJECTS of
+     *  which could only be read rather than rehashed, taking NANOS on
+     *  THREADS threads; then COMMITS commits and REFS refs.  PROBLEMS is
+     *  empty if all is well. */
+    public record FsckResult(int objects, long bytes, int legacyObjects, int commits,
+                             int refs, int threads, long nanos, List<String> problems) {
+    }
+
+    /** A working tree: its directory, head commit id and current branch. */
+    public record Worktree(Path dir, String head, String branch) {
+    }
+
+    /** The object cache's size and counters. */
+    public record CacheStats(long budget, long used, int size, long hits, long misses,
+                             long evictions) {
+    }
+
+    private final Repository repo;
+    /** This working tree's .gitlet directory. */
+    private final File gitletDir;
+
+    private GitletRepository(Path dir) {
+        File cwd = dir.toAbsolutePath().toFile();
+        this.repo = new Repository(cwd);
+        this.gitletDir = Utils.join(cwd, ".gitlet");
+    }
+
+    /** Creates a repository in DIR whose object ids are OBJECTFORMAT hashes. */
+    public static GitletRepository init(Path dir, String objectFormat) {
+        GitletRepository result = new GitletRepository(dir);
+        result.repo.init(objectFormat);
+        return result;
+    }
+
+    /** Creates a repository in DIR with SHA-1 object ids. */
+    public static GitletRepository init(Path dir) {
+        return init(dir, Hashing.SHA1);
+    }
+
+    /** Opens the repository whose working directory is DIR. */
+    public static GitletRepository open(Path dir) {
+        GitletRepository result = new GitletRepository(dir);
+        if (!result.gitletDir.isDirectory()) {
+            throw new GitletException("Not in an initialized Gitlet directory.");
+        }
+        return result;
+    }
+
+    /** Creates a repository in DIR from the one whose .gitlet directory is
+     *  REMOTEDIR, copying only the last DEPTH commits of each branch if DEPTH
+     *  is positive, and no blobs unless WITHBLOBS. */
+    public static GitletRepository clone(Path dir, Path remoteDir, int depth, boolean withBlobs) {
+        GitletRepository result = new GitletRepository(dir);
+        result.repo.clone(remoteDir.toString(), depth, withBlobs);
+        return result;
+    }
+
+    /** Stages FILENAMES, which are names of files in the working directory. */
+    public void add(Collection<String> fileNames) {
+        write(() -> repo.add(new ArrayList<>(fileNames)));
+    }
+
+    /** Stages FILENAMES, which are names of files in the working directory. */
+    public void add(String... fileNames) {
+        add(List.of(fileNames));
+    }
+
+    /** Stages every working file whose contents differ from its staged or
+     *  committed version. */
+    public void addAll() {
+        write(repo::addAll);
+    }
+
+    /** Commits the staging area with MESSAGE, returning the new commit's id. */
+    public String commit(String message) {
+        return write(() -> repo.commit(message));
+    }
+
+    /** Unstages FILENAME, or stages its removal if the head commit tracks it. */
+    public void rm(String fileName) {
+        write(() -> repo.rm(fileName));
+    }
+
+    /** Creates branch NAME at the head commit. */
+    public void branch(String name) {
+        write(() -> repo.branch(name));
+    }
+
+    /** Deletes branch NAME, but none of its commits. */
+    public void removeBranch(String name) {
+        write(() -> repo.removeBranch(name));
+    }
+
+    /** Checks out branch NAME and makes it the current branch. */
+    public void switchBranch(String name) {
+        write(() -> repo.switchBranch(name));
+    }
+
+    /** Checks out commit COMMITID and points the current branch at it. */
+    public void reset(String commitId) {
+        write(() -> repo.reset(commitId));
+    }
+
+    /** Restores FILENAME as of the head commit. */
+    public void restore(String fileName) {
+        write(() -> repo.restore(fileName));
+    }
+
+    /** Restores FILENAME as of commit COMMITID, or a unique prefix of its id. */
+    public void restore(String commitId, String fileName) {
+        write(() -> repo.restore(commitId, fileName));
+    }
+
+    /** Limits the working tree to the files matching PATTERNS, which use
+     *  the syntax of .gitletignore: switch and reset then write only those,
+     *  and files that leave the set are deleted. */
+    public void sparseCheckout(List<String> patterns) {
+        write(() -> repo.sparseCheckout(new ArrayList<>(patterns)));
+    }
+
+    /** Turns sparse checkout off, writing every file of the head commit. */
+    public void disableSparseCheckout() {
+        write(() -> repo.sparseCheckout(null));
+    }
+
+    /** The sparse-checkout patterns, or null if sparse checkout is off. */
+    public List<String> sparsePatterns() {
+        return repo.sparsePatterns();
+    }
+
+    /** Creates a working tree in DIR, which must not exist or be empty,
+     *  with BRANCH checked out.  It shares this repository's objects,
+     *  commits and branches, and has its own head and staging area. */
+    public void worktreeAdd(Path dir, String branch) {
+        write(() -> repo.worktreeAdd(dir.toAbsolutePath().toFile(), branch));
+    }
+
+    /** The working trees of this repository, the main one first. */
+    public List<Worktree> worktreeList() {
+        return repo.worktreeList();
+    }
+
+    /** Deletes unreachable objects and commits older than GRACEMILLIS, at
+     *  most LIMIT objects. */
+    public GcResult gc(long graceMillis, int limit) {
+        return write(() -> repo.gc(graceMillis, limit));
+    }
+
+    /** Moves objects from older repositories into the fan-out object
+     *  directory, returning how many were moved. */
+    public int migrateObjects() {
+        return write(repo::migrateObjects);
+    }
+
+    /** Records the repository whose .gitlet directory is REMOTEDIR as NAME. */
+    public void addRemote(String name, Path remoteDir) {
+        write(() -> repo.addRemote(name, remoteDir.toString()));
+    }
+
+    /** Copies BRANCH of remote NAME into branch NAME/BRANCH. */
+    public void fetch(String name, String branch) {
+        write(() -> repo.fetch(name, branch));
+    }
+
+    /** Fast-forwards BRANCH of remote NAME to the head commit. */
+    public void push(String name, String branch) {
+        write(() -> repo.push(name, branch));
+    }
+
+    /** The head commit's id. */
+    public String head() {
+        return repo.getHead().getCommitId();
+    }
+
+    /** The commits from the head back along first parents. */
+    public List<CommitInfo> log() {
+        return infos(repo.log());
+    }
+
+    /** The commits from the head back along first parents that changed PATH. */
+    public List<CommitInfo> log(String path) {
+        return repo.logPath(path);
+    }
+
+    /** The commits that changed FILENAME, following it back through
+     *  renames and copies. */
+    public List<CommitInfo> logFollow(String fileName) {
+        return infos(repo.logFollow(fileName));
+    }
+
+    /** Every commit, in no particular order. */
+    public List<CommitInfo> globalLog() {
+        return infos(repo.globalLog());
+    }
+
+    /** The ids of the commits whose message is MESSAGE. */
+    public List<String> find(String message) {
+        return repo.find(message);
+    }
+
+    /** The branches and what is staged. */
+    public Status status() {
+        return repo.status();
+    }
+
+    /** Every line of FILENAME as of the head commit, with the commit that
+     *  last changed it. */
+    public List<BlameLine> blame(String fileName) {
+        return repo.blame(fileName);
+    }
+
+    /** Writes to OUT how the working files differ from the staging area. */
+    public void diff(PrintStream out) {
+        repo.diff(out);
+    }
+
+    /** Writes to OUT how the staging area differs from the head commit. */
+    public void diffStaged(PrintStream out) {
+        repo.diffStaged(out);
+    }
+
+    /** Writes to OUT how the working files differ from commit REF, a
+     *  branch or a commit id or unique prefix of one. */
+    public void diff(PrintStream out, String ref) {
+        repo.diff(out, ref);
+    }
+
+    /** Writes to OUT how commit NEWREF differs from commit OLDREF. */
+    public void diff(PrintStream out, String oldRef, String newRef) {
+        repo.diff(out, oldRef, newRef);
+    }
+
+    /** Writes the files of commit REF, a branch or a commit id or unique
+     *  prefix of one, to OUT as a FORMAT archive, "tar" or "zip", reading
+     *  blobs on THREADS threads.  The same commit always gives the same
+     *  bytes.  OUT is flushed but not closed. */
+    public void archive(OutputStream out, String ref, String format, int threads) {
+        repo.archive(out, ref, format, threads);
+    }
+
+    /** Checks every object, commit and ref, rehashing the objects on
+     *  THREADS threads.  Nothing is changed. */
+    public FsckResult fsck(int threads) {
+        return repo.fsck(threads);
+    }
+
+    /** The counters of this object's cache of decoded commits and blobs.
+     *  The cache lives as long as this object, so the counters only cover
+     *  operations run through it; there is no command line for them, since
+     *  each command runs in a fresh process with a cold cache. */
+    public CacheStats stats() {
+        return repo.stats();
+    }
+
+    /** Keeps a journal of changed working files until the process is
+     *  stopped; see Watcher. */
+    public void watch() {
+        repo.watch();
+    }
+
+    /** Runs ACTION under the writer lock. */
+    private void write(Runnable action) {
+        write(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /** Runs ACTION under the writer lock and returns its result. */
+    @SuppressWarnings("try")
+    private <T> T write(Supplier<T> action) {
+        try (RepositoryLock lock = RepositoryLock.acquire(Repository.commonDir(gitletDir))) {
+            return action.get();
+        }
+    }
+
+    private static List<CommitInfo> infos(Collection<Commit> commits) {
+        List<CommitInfo> result = new ArrayList<>(commits.size());
+        for (Commit commit : commits) {
+            result.add(CommitInfo.of(commit));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/** Hashing of object contents for both supported object formats, "sha1"
+ *  (the default) and "sha256".  Digests are reused per thread instead of
+ *  being looked up on every call, files are hashed by streaming them
+ *  through a fixed-size buffer, and hashFiles spreads independent files
+ *  over all cores.
+ *  A blob's id is the hash of "blob <length>\0" followed by its contents,
+ *  so it can be computed from the file alone.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class Hashing {
+
+    /** The default object format. */
+    static final String SHA1 = "sha1";
+    /** The alternative, collision-resistant object format. */
+    static final String SHA256 = "sha256";
+
+    /** Size of the buffer that files are streamed through. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<MessageDigest> SHA1_DIGEST =
+            ThreadLocal.withInitial(() -> newDigest("SHA-1"));
+    private static final ThreadLocal<MessageDigest> SHA256_DIGEST =
+            ThreadLocal.withInitial(() -> newDigest("SHA-256"));
+    private static final ThreadLocal<byte[]> BUFFER =
+            ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** True iff FORMAT names a supported object format. */
+    static boolean isFormat(String format) {
+        return SHA1.equals(format) || SHA256.equals(format);
+    }
+
+    /** Length of an id in FORMAT as a hexadecimal numeral. */
+    static int idLength(String format) {
+        return SHA256.equals(format) ? 64 : Utils.UID_LENGTH;
+    }
+
+    /** Returns this thread's digest for FORMAT, reset and ready for use. */
+    private static MessageDigest digest(String format) {
+        MessageDigest md = (SHA256.equals(format) ? SHA256_DIGEST : SHA1_DIGEST).get();
+        md.reset();
+        return md;
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support " + algorithm);
+        }
+    }
+
+    /** Returns the FORMAT hash of the concatenation of VALS, which may be
+     *  any mixture of byte arrays and Strings. */
+    static String hash(String format, Object... vals) {
+        long start = Trace.start();
+        long length = 0;
+        MessageDigest md = digest(format);
+        for (Object val : vals) {
+            byte[] bytes;
+            if (val instanceof byte[]) {
+                bytes = (byte[]) val;
+            } else if (val instanceof String) {
+                bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
+            } else {
+                throw new IllegalArgumentException("improper type to hash");
+            }
+            md.update(bytes);
+            length += bytes.length;
+        }
+        String result = toHex(md.digest());
+        Trace.hash(start, length);
+        return result;
+    }
+
+    /** Returns the header that precedes a blob of LENGTH bytes when hashed. */
+    static byte[] blobHeader(long length) {
+        return ("blob " + length + "\0").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the FORMAT id of a blob with the contents of FILE, reading
+     *  FILE through a fixed-size buffer. */
+    static String hashBlob(String format, File file) {
+        return hashFile(format, blobHeader(file.length()), file);
+    }
+
+    /** Returns the FORMAT hash of the bytes of FILE as they are, such as a
+     *  raw blob in the object store, reading it through a fixed-size buffer. */
+    static String hashFile(String format, File file) {
+        return hashFile(format, new byte[0], file);
+    }
+
+    /** Returns the FORMAT hash of PREFIX followed by the bytes of FILE. */
+    private static String hashFile(String format, byte[] prefix, File file) {
+        long start = Trace.start();
+        MessageDigest md = digest(format);
+        md.update(prefix);
+        byte[] buffer = BUFFER.get();
+        long length = 0;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+                length += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        String result = toHex(md.digest());
+        Trace.hash(start, length);
+        return result;
+    }
+
+    /** Returns the FORMAT id of a blob with contents CONTENTS. */
+    static String hashBlob(String format, byte[] contents) {
+        return hash(format, blobHeader(contents.length), contents);
+    }
+
+    /** Returns the blob ids of FILES, hashed in parallel. */
+    static Map<File, String> hashFiles(String format, List<File> files) {
+        String[] ids = new String[files.size()];
+        IntStream.range(0, ids.length).parallel()
+                .forEach(i -> ids[i] = hashBlob(format, files.get(i)));
+        Map<File, String> result = new HashMap<>();
+        for (int i = 0; i < ids.length; i += 1) {
+            result.put(files.get(i), ids[i]);
+        }
+        return result;
+    }
+
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+}
@@ -0,0 +1,259 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/** The patterns of a .gitletignore file, compiled for fast matching.
+ *  Each pattern is a glob: * matches any run of characters other than /,
+ *  ** matches anything (between slashes, also no directories at all),
+ *  ? matches one character other than /, [a-z] and [!a-z] match
+ *  character classes, and \ escapes the next character.
+ *  A pattern ending in / only matches directories, and a pattern with no
+ *  other / matches a file's name in any directory.  Blank lines and lines
+ *  starting with # are skipped.
+ *  The literal prefix of every pattern (the characters before its first
+ *  wildcard) is stored in a trie, so matching a name walks the trie once
+ *  and only runs the glob automata of patterns whose prefix it has.  Each
+ *  automaton is simulated over a set of states, so matching takes time
+ *  linear in the name whatever the pattern.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class IgnoreMatcher {
+
+    /* Kinds of glob token. */
+    private static final int LITERAL = 0;
+    private static final int ANY = 1;
+    private static final int STAR = 2;
+    private static final int DOUBLE_STAR = 3;
+    private static final int CLASS = 4;
+
+    /** A compiled pattern: a sequence of tokens, the automaton's states
+     *  being the positions between them. */
+    private static class Glob {
+        private final int[] kinds;
+        private final char[] literals;
+        private final String[] classes;
+        private final boolean[] negated;
+        private final boolean directoryOnly;
+        /** Number of leading LITERAL tokens, which the trie has matched. */
+        private int prefixLength;
+
+        Glob(int size, boolean directoryOnly) {
+            kinds = new int[size];
+            literals = new char[size];
+            classes = new String[size];
+            negated = new boolean[size];
+            this.directoryOnly = directoryOnly;
+        }
+
+        /** True iff the tokens after the literal prefix match NAME from START. */
+        boolean matches(String name, int start) {
+            int end = kinds.length;
+            BitSet states = new BitSet(end + 1);
+            states.set(prefixLength);
+            closeOverStars(states);
+            for (int i = start; i < name.length() && !states.isEmpty(); i += 1) {
+                char c = name.charAt(i);
+                BitSet next = new BitSet(end + 1);
+                for (int s = states.nextSetBit(0); s >= 0 && s < end; s = states.nextSetBit(s + 1)) {
+                    switch (kinds[s]) {
+                        case LITERAL:
+                            if (c == literals[s]) {
+                                next.set(s + 1);
+                            }
+                            break;
+                        case ANY:
+                            if (c != '/') {
+                                next.set(s + 1);
+                            }
+                            break;
+                        case STAR:
+                            if (c != '/') {
+                                next.set(s);
+                            }
+                            break;
+                        case DOUBLE_STAR:
+                            next.set(s);
+                            break;
+                        default:
+                            if (inClass(s, c)) {
+                                next.set(s + 1);
+                            }
+                    }
+                }
+                closeOverStars(next);
+                states = next;
+            }
+            return states.get(end);
+        }
+
+        /** Adds to STATES the states reachable by letting stars match
+         *  nothing. */
+        private void closeOverStars(BitSet states) {
+            for (int s = states.nextSetBit(0); s >= 0 && s < kinds.length; s = states.nextSetBit(s + 1)) {
+                if (kinds[s] == STAR || kinds[s] == DOUBLE_STAR) {
+                    states.set(s + 1);
+                }
+            }
+        }
+
+        private boolean inClass(int token, char c) {
+            String ranges = classes[token];
+            boolean found = false;
+            for (int i = 0; i + 1 < ranges.length() && !found; i += 2) {
+                found = ranges.charAt(i) <= c && c <= ranges.charAt(i + 1);
+            }
+            return found != negated[token] && c != '/';
+        }
+    }
+
+    /** A trie node: the patterns whose literal prefix ends here. */
+    private static class Node {
+        private final HashMap<Character, Node> children = new HashMap<>();
+        private final List<Glob> globs = new ArrayList<>();
+    }
+
+    /** Patterns without a /, matched against the last name in a path. */
+    private final Node namePatterns = new Node();
+    /** Patterns with a /, matched against the whole path. */
+    private final Node pathPatterns = new Node();
+    private boolean empty = true;
+
+    /** A matcher for PATTERNS, one pattern per element. */
+    IgnoreMatcher(List<String> patterns) {
+        for (String pattern : patterns) {
+            add(pattern);
+        }
+    }
+
+    /** Returns the matcher for the patterns in IGNOREFILE, which need not exist. */
+    static IgnoreMatcher load(File ignoreFile) {
+        List<String> patterns = new ArrayList<>();
+        if (ignoreFile.isFile()) {
+            for (String line : Utils.readContentsAsString(ignoreFile).split("\n")) {
+                patterns.add(line);
+            }
+        }
+        return new IgnoreMatcher(patterns);
+    }
+
+    /** True iff PATH, relative to the working directory and using / as a
+     *  separator, is ignored.  ISDIRECTORY tells whether it is a directory;
+     *  callers walking the tree should not descend into ignored ones. */
+    boolean matches(String path, boolean isDirectory) {
+        if (empty) {
+            return false;
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return matches(namePatterns, name, isDirectory)
+                || matches(pathPatterns, path, isDirectory);
+    }
+
+    private static boolean matches(Node root, String name, boolean isDirectory) {
+        Node node = root;
+        for (int depth = 0; node != null; depth += 1) {
+            for (Glob glob : node.globs) {
+                if ((isDirectory || !glob.directoryOnly) && glob.matches(name, depth)) {
+                    return true;
+                }
+            }
+            node = depth < name.length() ? node.children.get(name.charAt(depth)) : null;
+        }
+        return false;
+    }
+
+    /** Compiles PATTERN and files it under its literal prefix. */
+    private void add(String pattern) {
+        pattern = pattern.trim();
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return;
+        }
+        boolean directoryOnly = pattern.endsWith("/");
+        if (directoryOnly) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        boolean anchored = pattern.contains("/");
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()) {
+            return;
+        }
+        // "**/" may also match no directories at all
+        if (pattern.startsWith("**/")) {
+            add(pattern.substring(3) + (directoryOnly ? "/" : ""));
+        }
+        int dirs = pattern.indexOf("/**/");
+        if (dirs >= 0) {
+            add("/" + pattern.substring(0, dirs) + pattern.substring(dirs + 3)
+                    + (directoryOnly ? "/" : ""));
+        }
+        Glob glob = compile(pattern, directoryOnly);
+
+        Node node = anchored ? pathPatterns : namePatterns;
+        while (glob.prefixLength < glob.kinds.length && glob.kinds[glob.prefixLength] == LITERAL) {
+            node = node.children.computeIfAbsent(glob.literals[glob.prefixLength], c -> new Node());
+            glob.prefixLength += 1;
+        }
+        node.globs.add(glob);
+        empty = false;
+    }
+
+    /** Turns PATTERN into glob tokens. */
+    private static Glob compile(String pattern, boolean directoryOnly) {
+        List<int[]> tokens = new ArrayList<>();
+        List<String> classes = new ArrayList<>();
+        for (int i = 0; i < pattern.length(); i += 1) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) {
+                i += 1;
+                tokens.add(new int[] {LITERAL, pattern.charAt(i), 0});
+            } else if (c == '*' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                i += 1;
+                tokens.add(new int[] {DOUBLE_STAR, 0, 0});
+            } else if (c == '*') {
+                tokens.add(new int[] {STAR, 0, 0});
+            } else if (c == '?') {
+                tokens.add(new int[] {ANY, 0, 0});
+            } else if (c == '[' && pattern.indexOf(']', i + 2) > 0) {
+                int close = pattern.indexOf(']', i + 2);
+                String body = pattern.substring(i + 1, close);
+                boolean negate = body.startsWith("!") || body.startsWith("^");
+                if (negate) {
+                    body = body.substring(1);
+                }
+                StringBuilder ranges = new StringBuilder();
+                for (int j = 0; j < body.length(); j += 1) {
+                    char low = body.charAt(j);
+                    char high = low;
+                    if (j + 2 < body.length() && body.charAt(j + 1) == '-') {
+                        high = body.charAt(j + 2);
+                        j += 2;
+                    }
+                    ranges.append(low).append(high);
+                }
+                tokens.add(new int[] {CLASS, classes.size(), negate ? 1 : 0});
+                classes.add(ranges.toString());
+                i = close;
+            } else {
+                tokens.add(new int[] {LITERAL, c, 0});
+            }
+        }
+
+        Glob glob = new Glob(tokens.size(), directoryOnly);
+        for (int i = 0; i < tokens.size(); i += 1) {
+            int[] token = tokens.get(i);
+            glob.kinds[i] = token[0];
+            if (token[0] == LITERAL) {
+                glob.literals[i] = (char) token[1];
+            } else if (token[0] == CLASS) {
+                glob.classes[i] = classes.get(token[1]);
+                glob.negated[i] = token[2] == 1;
+            }
+        }
+        return glob;
+    }
+}
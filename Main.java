@@ -1,109 +1,434 @@
 package gitlet;
-import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
+ *  This is the command line over GitletRepository: it parses arguments,
+ *  runs the operation and prints its result or error message.
  *  @author Conrad Ehlers & Morgan Sinnock
  */
 public class Main {
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
+    /** Usage: java gitlet.Main [--trace] ARGS, where ARGS contains
      *  <COMMAND> <OPERAND1> <OPERAND2> ...
+     *  With --trace, time and I/O spent by the command go to System.err.
      */
     public static void main(String[] args) {
         try {
+            if (args.length > 0 && args[0].equals("--trace")) {
+                Trace.enable();
+                args = Arrays.copyOfRange(args, 1, args.length);
+            }
             if (args.length == 0) {
                 System.out.println("Please enter a command.");
                 return;
             }
-            Repository repo = new Repository();
-            mainHelper(args, repo);
+            Trace.begin(args[0]);
+            mainHelper(args, Path.of(System.getProperty("user.dir")));
+            Trace.end();
         } catch (GitletException e) {
             System.out.println(e.getMessage());
             System.exit(0);
         }
     }
 
-    /** Handle the command based on the first argument */
-    private static void mainHelper(String[] args, Repository repo) {
+    /** Handle the command based on the first argument, in working directory CWD */
+    private static void mainHelper(String[] args, Path cwd) {
         switch (args[0]) {
             case "init":
-                repo.init();
+                if (args.length == 2 && args[1].startsWith("--object-format=")) {
+                    GitletRepository.init(cwd, args[1].substring("--object-format=".length()));
+                } else {
+                    validateArgs(args, 1);
+                    GitletRepository.init(cwd);
+                }
                 break;
             case "add":
-                validateArgs(args, 2);
-                repo.add(args[1]);
+                if (args.length < 2) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                if (args.length == 2 && args[1].equals(".")) {
+                    GitletRepository.open(cwd).addAll();
+                } else {
+                    GitletRepository.open(cwd).add(Arrays.asList(args).subList(1, args.length));
+                }
                 break;
             case "commit":
                 validateArgs(args, 2);
-                repo.commit(args[1]);
+                GitletRepository.open(cwd).commit(args[1]);
                 break;
             case "rm":
                 validateArgs(args, 2);
-                repo.rm(args[1]);
+                GitletRepository.open(cwd).rm(args[1]);
                 break;
             case "reset":
                 validateArgs(args, 2);
-                repo.reset(args[1]);
+                GitletRepository.open(cwd).reset(args[1]);
                 break;
             case "branch":
                 validateArgs(args, 2);
-                repo.branch(args[1]);
+                GitletRepository.open(cwd).branch(args[1]);
                 break;
             case "find":
                 validateArgs(args, 2);
-                repo.find(args[1]);
+                List<String> found = GitletRepository.open(cwd).find(args[1]);
+                if (found.isEmpty()) {
+                    System.out.println("Found no commit with that message.");
+                }
+                found.forEach(System.out::println);
                 break;
             case "status":
-                checkGitletDir();
                 validateArgs(args, 1);
-                repo.status();
+                printStatus(GitletRepository.open(cwd).status());
                 break;
             case "log":
-                validateArgs(args, 1);
-                repo.log();
+                if (args.length == 3 && args[1].equals("--follow")) {
+                    printCommits(GitletRepository.open(cwd).logFollow(args[2]));
+                } else if (args.length == 3 && args[1].equals("--")) {
+                    printCommits(GitletRepository.open(cwd).log(args[2]));
+                } else {
+                    validateArgs(args, 1);
+                    printCommits(GitletRepository.open(cwd).log());
+                }
                 break;
             case "rm-branch":
                 validateArgs(args, 2);
-                repo.removeBranch(args[1]);
+                GitletRepository.open(cwd).removeBranch(args[1]);
                 break;
             case "restore":
                 if (args.length == 3) {
-                    repo.restore(args[2]);
+                    GitletRepository.open(cwd).restore(args[2]);
                 } else if (args.length == 4) {
                     if (!args[2].equals("--")) {
                         throw new GitletException("Incorrect operands.");
                     }
-                    repo.restore(args[1], args[3]);
+                    GitletRepository.open(cwd).restore(args[1], args[3]);
                 } else {
                     throw new GitletException("Incorrect operands.");
                 }
                 break;
             case "switch":
                 validateArgs(args, 2);
-                repo.switchBranch(args[1]);
+                GitletRepository.open(cwd).switchBranch(args[1]);
                 break;
             case "global-log":
                 validateArgs(args, 1);
-                repo.globalLog();
+                List<GitletRepository.CommitInfo> all = GitletRepository.open(cwd).globalLog();
+                if (all.isEmpty()) {
+                    System.out.println("No commits found.");
+                }
+                printCommits(all);
+                break;
+            case "gc":
+                gcHelper(args, cwd);
+                break;
+            case "migrate-objects":
+                validateArgs(args, 1);
+                int moved = GitletRepository.open(cwd).migrateObjects();
+                System.out.println("Moved " + moved + " objects.");
+                break;
+            case "worktree":
+                worktreeHelper(args, cwd);
+                break;
+            case "sparse-checkout":
+                sparseCheckoutHelper(args, cwd);
+                break;
+            case "archive":
+                archiveHelper(args, cwd);
+                break;
+            case "fsck":
+                fsckHelper(args, cwd);
+                break;
+            case "add-remote":
+                validateArgs(args, 3);
+                GitletRepository.open(cwd).addRemote(args[1], Path.of(args[2]));
+                break;
+            case "fetch":
+                validateArgs(args, 3);
+                GitletRepository.open(cwd).fetch(args[1], args[2]);
+                break;
+            case "push":
+                validateArgs(args, 3);
+                GitletRepository.open(cwd).push(args[1], args[2]);
+                break;
+            case "watch":
+                validateArgs(args, 1);
+                GitletRepository watched = GitletRepository.open(cwd);
+                System.out.println("Watching " + cwd + "; stop with Ctrl-C.");
+                watched.watch();
+                break;
+            case "blame":
+                validateArgs(args, 2);
+                printBlame(GitletRepository.open(cwd).blame(args[1]));
+                break;
+            case "diff":
+                diffHelper(args, cwd);
+                break;
+            case "clone":
+                cloneHelper(args, cwd);
                 break;
             default:
                 throw new GitletException("No command with that name exists.");
         }
     }
 
-    /** Validate arguments for the command */
-    private static void validateArgs(String[] args, int expectedLength) {
-        if (args.length != expectedLength) {
+    /** Handle gc [--grace=<seconds>] [--limit=<objects>] */
+    private static void gcHelper(String[] args, Path cwd) {
+        long graceMillis = GarbageCollector.DEFAULT_GRACE_MILLIS;
+        int limit = Integer.MAX_VALUE;
+        try {
+            for (int i = 1; i < args.length; i += 1) {
+                if (args[i].startsWith("--grace=")) {
+                    graceMillis = 1000 * Long.parseLong(args[i].substring("--grace=".length()));
+                } else if (args[i].startsWith("--limit=")) {
+                    limit = Integer.parseInt(args[i].substring("--limit=".length()));
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+            }
+        } catch (NumberFormatException excp) {
             throw new GitletException("Incorrect operands.");
         }
+        GitletRepository.GcResult result = GitletRepository.open(cwd).gc(graceMillis, limit);
+        System.out.println("Removed " + result.objectsRemoved() + " objects ("
+                + result.bytesReclaimed() + " bytes) and "
+                + result.commitsRemoved() + " commits.");
+        if (result.objectsDeferred() > 0) {
+            System.out.println(result.objectsDeferred()
+                    + " unreachable objects left for the next run.");
+        }
     }
 
-    /** Check if the Gitlet directory exists */
-    private static void checkGitletDir() {
-        File gitletDir = new File(".gitlet");
-        if (!gitletDir.exists() || !gitletDir.isDirectory()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+    /** Handle worktree add <directory> <branch> | list */
+    private static void worktreeHelper(String[] args, Path cwd) {
+        if (args.length == 4 && args[1].equals("add")) {
+            GitletRepository.open(cwd).worktreeAdd(cwd.resolve(args[2]), args[3]);
+        } else if (args.length == 2 && args[1].equals("list")) {
+            for (GitletRepository.Worktree worktree : GitletRepository.open(cwd).worktreeList()) {
+                System.out.println(worktree.dir() + " " + worktree.head().substring(0, 7)
+                        + " [" + worktree.branch() + "]");
+            }
+        } else {
+            throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** Handle sparse-checkout set <pattern>... | disable | list */
+    private static void sparseCheckoutHelper(String[] args, Path cwd) {
+        if (args.length > 2 && args[1].equals("set")) {
+            GitletRepository.open(cwd).sparseCheckout(Arrays.asList(args).subList(2, args.length));
+        } else if (args.length == 2 && args[1].equals("disable")) {
+            GitletRepository.open(cwd).disableSparseCheckout();
+        } else if (args.length == 2 && args[1].equals("list")) {
+            List<String> patterns = GitletRepository.open(cwd).sparsePatterns();
+            if (patterns != null) {
+                patterns.forEach(System.out::println);
+            }
+        } else {
+            throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** Handle archive <commit> [--format=tar|zip] [--output=<file>] [--threads=<n>];
+     *  without --format, an output file ending in .zip gets a zip archive */
+    private static void archiveHelper(String[] args, Path cwd) {
+        if (args.length < 2) {
+            throw new GitletException("Incorrect operands.");
+        }
+        String format = null;
+        Path output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 2; i < args.length; i += 1) {
+                if (args[i].startsWith("--format=")) {
+                    format = args[i].substring("--format=".length());
+                } else if (args[i].startsWith("--output=")) {
+                    output = cwd.resolve(args[i].substring("--output=".length()));
+                } else if (args[i].startsWith("--threads=")) {
+                    threads = Integer.parseInt(args[i].substring("--threads=".length()));
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+            }
+        } catch (NumberFormatException excp) {
+            throw new GitletException("Incorrect operands.");
+        }
+        if (threads < 1) {
+            throw new GitletException("Incorrect operands.");
+        }
+        if (format == null) {
+            format = output != null && output.toString().endsWith(".zip") ? "zip" : "tar";
+        } else if (!format.equals("tar") && !format.equals("zip")) {
+            throw new GitletException("Unknown archive format.");
+        }
+        GitletRepository repo = GitletRepository.open(cwd);
+        if (output == null) {
+            OutputStream out = new FileOutputStream(FileDescriptor.out);
+            repo.archive(out, args[1], format, threads);
+            return;
+        }
+        // written beside OUTPUT and renamed over it, so a bad ref or a failed
+        // write leaves no partial archive behind
+        Path temp = Utils.tempFileFor(output.toFile());
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                repo.archive(out, args[1], format, threads);
+            }
+            Utils.replace(temp, output.toFile());
+        } catch (IOException excp) {
+            throw new GitletException("Cannot write " + output + ".");
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException excp) {
+                // the temporary file is left behind; the archive itself is not affected
+            }
+        }
+    }
+
+    /** Handle fsck [--threads=<n>] */
+    private static void fsckHelper(String[] args, Path cwd) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 1; i < args.length; i += 1) {
+                if (args[i].startsWith("--threads=")) {
+                    threads = Integer.parseInt(args[i].substring("--threads=".length()));
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+            }
+        } catch (NumberFormatException excp) {
+            throw new GitletException("Incorrect operands.");
+        }
+        if (threads < 1) {
+            throw new GitletException("Incorrect operands.");
+        }
+        GitletRepository.FsckResult result = GitletRepository.open(cwd).fsck(threads);
+        result.problems().forEach(System.out::println);
+        double seconds = result.nanos() / 1e9;
+        System.out.printf("Checked %d objects (%d bytes) in %.2f s on %d threads: %.1f MB/s.%n",
+                result.objects(), result.bytes(), seconds, result.threads(),
+                seconds > 0 ? result.bytes() / 1e6 / seconds : 0.0);
+        if (result.legacyObjects() > 0) {
+            System.out.println(result.legacyObjects()
+                    + " objects are serialized blobs whose ids cannot be rehashed.");
+        }
+        System.out.println("Checked " + result.commits() + " commits and " + result.refs() + " refs: "
+                + (result.problems().isEmpty() ? "no problems found."
+                        : result.problems().size() + " problems found."));
+    }
+
+    /** Handle diff [--staged | <commit> [<commit>]] */
+    private static void diffHelper(String[] args, Path cwd) {
+        if (args.length > 3) {
+            throw new GitletException("Incorrect operands.");
+        }
+        GitletRepository repo = GitletRepository.open(cwd);
+        if (args.length == 1) {
+            repo.diff(System.out);
+        } else if (args.length == 2 && args[1].equals("--staged")) {
+            repo.diffStaged(System.out);
+        } else if (args.length == 2) {
+            repo.diff(System.out, args[1]);
+        } else {
+            repo.diff(System.out, args[1], args[2]);
+        }
+    }
+
+    /** Handle clone <remote .gitlet directory> [--depth=<commits>] [--filter=blob:none] */
+    private static void cloneHelper(String[] args, Path cwd) {
+        if (args.length < 2) {
+            throw new GitletException("Incorrect operands.");
+        }
+        int depth = 0;
+        boolean withBlobs = true;
+        try {
+            for (int i = 2; i < args.length; i += 1) {
+                if (args[i].startsWith("--depth=")) {
+                    depth = Integer.parseInt(args[i].substring("--depth=".length()));
+                } else if (args[i].equals("--filter=blob:none")) {
+                    withBlobs = false;
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+            }
+        } catch (NumberFormatException excp) {
+            throw new GitletException("Incorrect operands.");
+        }
+        if (depth < 0) {
+            throw new GitletException("Incorrect operands.");
+        }
+        GitletRepository.clone(cwd, Path.of(args[1]), depth, withBlobs);
+    }
+
+    /** Print COMMITS in log format */
+    private static void printCommits(List<GitletRepository.CommitInfo> commits) {
+        SimpleDateFormat formatter = new SimpleDateFormat("EEE MMM d HH:mm:ss y Z");
+        for (GitletRepository.CommitInfo commit : commits) {
+            System.out.println("===");
+            System.out.println("commit " + commit.id());
+            System.out.println("Date: " + formatter.format(Date.from(commit.timestamp())));
+            System.out.println(commit.message());
+            System.out.println();
+        }
+    }
+
+    /** Print STATUS, marking the current branch with a * */
+    private static void printStatus(GitletRepository.Status status) {
+        System.out.println("=== Branches ===");
+        for (String branch : status.branches()) {
+            System.out.println(branch.equals(status.currentBranch()) ? "*" + branch : branch);
+        }
+        System.out.println();
+
+        System.out.println("=== Staged Files ===");
+        status.staged().forEach(System.out::println);
+        System.out.println();
+
+        System.out.println("=== Removed Files ===");
+        status.removed().forEach(System.out::println);
+        System.out.println();
+
+        // staged renames, shown only when there are some
+        if (!status.renamed().isEmpty()) {
+            System.out.println("=== Renamed Files ===");
+            for (GitletRepository.Rename rename : status.renamed()) {
+                System.out.println(rename.from() + " -> " + rename.to());
+            }
+            System.out.println();
+        }
+
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        // optional, will leave blank
+        System.out.println();
+
+        System.out.println("=== Untracked Files ===");
+        // optional, will leave blank
+        System.out.println();
+    }
+
+    /** Print each line of a file with the commit that last changed it */
+    private static void printBlame(List<GitletRepository.BlameLine> lines) {
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z");
+        int width = String.valueOf(lines.size()).length();
+        for (GitletRepository.BlameLine line : lines) {
+            System.out.printf("%s (%s %" + width + "d) %s%n", line.commitId().substring(0, 8),
+                    formatter.format(Date.from(line.timestamp())), line.number(), line.text());
+        }
+    }
+
+    /** Validate arguments for the command */
+    private static void validateArgs(String[] args, int expectedLength) {
+        if (args.length != expectedLength) {
+            throw new GitletException("Incorrect operands.");
         }
     }
 }
@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** An in-process cache of decoded objects (commits and small blobs) that
+ *  keeps the total estimated size of its entries under a byte budget,
+ *  evicting the least recently used entries first.
+ *  The budget defaults to DEFAULT_BUDGET and may be changed with the
+ *  gitlet.cache.bytes system property or the GITLET_CACHE_BYTES
+ *  environment variable; a budget of 0 disables caching.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class ObjectCache {
+
+    /** Budget used when none is configured: 32 MiB. */
+    static final long DEFAULT_BUDGET = 32L * 1024 * 1024;
+
+    /** Objects bigger than budget / LARGE_OBJECT_FRACTION are never cached,
+     *  so that one huge blob cannot flush everything else. */
+    private static final int LARGE_OBJECT_FRACTION = 8;
+
+    /** A cached value together with its estimated size in bytes. */
+    private static class Entry {
+        private final Object value;
+        private final long weight;
+
+        Entry(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** key: object key, value: cached entry; kept in access order so the
+     *  eldest entry is always the least recently used one. */
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long budget;
+    private long used;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** A cache holding at most BUDGET bytes of objects. */
+    ObjectCache(long budget) {
+        this.budget = Math.max(0, budget);
+    }
+
+    /** Returns the budget configured for this process. */
+    static long configuredBudget() {
+        String value = System.getProperty("gitlet.cache.bytes");
+        if (value == null) {
+            value = System.getenv("GITLET_CACHE_BYTES");
+        }
+        if (value == null) {
+            return DEFAULT_BUDGET;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException excp) {
+            return DEFAULT_BUDGET;
+        }
+    }
+
+    /** Returns the object stored under KEY as a TYPE, or null (counting a
+     *  miss) if it is not cached. */
+    <T> T get(String key, Class<T> type) {
+        Entry entry = entries.get(key);
+        if (entry == null || !type.isInstance(entry.value)) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return type.cast(entry.value);
+    }
+
+    /** Caches VALUE under KEY with an estimated size of WEIGHT bytes,
+     *  evicting least recently used entries until the budget is met. */
+    void put(String key, Object value, long weight) {
+        invalidate(key);
+        if (weight > budget / LARGE_OBJECT_FRACTION) {
+            return;
+        }
+        entries.put(key, new Entry(value, weight));
+        used += weight;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (used > budget && eldest.hasNext()) {
+            used -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions += 1;
+        }
+    }
+
+    /** Drops the entry stored under KEY, if any. */
+    void invalidate(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            used -= old.weight;
+        }
+    }
+
+    /** Drops every entry, keeping the hit/miss counters. */
+    void clear() {
+        entries.clear();
+        used = 0;
+    }
+
+    /** Estimated heap size of BLOB. */
+    static long weigh(Blob blob) {
+        return 64 + 3L * blob.getContents().length;
+    }
+
+    /** Estimated heap size of COMMIT, dominated by its file table. */
+    static long weigh(Commit commit) {
+        return 256 + commit.getFiles().weight();
+    }
+
+    // getters
+    long getBudget() {
+        return budget;
+    }
+
+    long getUsed() {
+        return used;
+    }
+
+    int getSize() {
+        return entries.size();
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    long getEvictions() {
+        return evictions;
+    }
+}
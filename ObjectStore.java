@@ -0,0 +1,375 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The object store keeps each object in .gitlet/objects/xx/yyyy..., where
+ *  xx are the first two hex digits of its id and yyyy... the rest, so that
+ *  no directory grows past 1/256th of the store.  Lookups go straight to
+ *  the object's path and never list a directory.
+ *  Repositories created before the fan-out keep their objects directly in
+ *  .gitlet/; those are still found, and migrate() moves them into place.
+ *  Blobs are stored raw: the header "blob <length>\0" followed by the file's
+ *  bytes, exactly the bytes their id is the hash of.  This lets restore copy
+ *  a blob into the working tree with FileChannel.transferTo, without the
+ *  contents ever passing through the heap.  Older blobs stored as serialized
+ *  Blob objects are still read and restored the slow way.
+ *  Every object is written to a temporary file and renamed into place, so
+ *  an object that exists is complete.
+ *  A store may have a promisor: the store of the repository it was cloned
+ *  from without blobs.  A blob missing here is then fetched from the
+ *  promisor the first time it is read or restored.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class ObjectStore {
+
+    /** Number of leading hex digits naming the fan-out directory. */
+    private static final int FANOUT_DIGITS = 2;
+
+    /** The .gitlet directory, which held objects before the fan-out. */
+    private final File gitletDir;
+    /** The .gitlet/objects directory. */
+    private final File objectsDir;
+    /** The store missing blobs are fetched from, or null. */
+    private final ObjectStore promisor;
+
+    ObjectStore(File gitletDir) {
+        this(gitletDir, null);
+    }
+
+    /** The store in GITLETDIR, fetching missing objects from PROMISOR
+     *  if it is not null. */
+    ObjectStore(File gitletDir, ObjectStore promisor) {
+        this.gitletDir = gitletDir;
+        this.objectsDir = Utils.join(gitletDir, "objects");
+        this.promisor = promisor;
+    }
+
+    /** The fan-out path of object ID, whether or not it exists. */
+    File file(String id) {
+        return Utils.join(objectsDir, id.substring(0, FANOUT_DIGITS), id.substring(FANOUT_DIGITS));
+    }
+
+    /** The file currently holding object ID: its fan-out path, or its
+     *  pre-fan-out path in .gitlet/ if only that exists. */
+    File find(String id) {
+        File file = file(id);
+        if (!file.isFile()) {
+            File legacy = Utils.join(gitletDir, id);
+            if (legacy.isFile()) {
+                return legacy;
+            }
+        }
+        return file;
+    }
+
+    /** True iff object ID is in the store.  Objects the promisor has but
+     *  this store does not are not counted. */
+    boolean contains(String id) {
+        return find(id).isFile();
+    }
+
+    /** True iff object ID is missing here but the promisor has it. */
+    boolean promised(String id) {
+        return promisor != null && !contains(id) && promisor.contains(id);
+    }
+
+    /** True iff object ID is a blob stored as a serialized Blob by an older
+     *  version, so that its id is not the hash of its contents.  The object
+     *  is looked at where it is, here or in the promisor, and never fetched. */
+    boolean isLegacyBlob(String id) {
+        File file = find(id);
+        if (!file.isFile() && promisor != null) {
+            file = promisor.find(id);
+        }
+        return file.isFile() && !isRaw(file);
+    }
+
+    /** Like find, but first fetches object ID from the promisor if it is
+     *  missing here. */
+    File fetch(String id) {
+        File file = find(id);
+        if (!file.isFile() && promisor != null && promisor.contains(id)) {
+            copyFrom(promisor, id);
+            file = find(id);
+        }
+        return file;
+    }
+
+    /** Copies object ID, as stored, from SOURCE into this store. */
+    void copyFrom(ObjectStore source, String id) {
+        File file = file(id);
+        file.getParentFile().mkdirs();
+        Path temp = Utils.tempFileFor(file);
+        long start = Trace.start();
+        try {
+            try {
+                Files.copy(source.find(id).toPath(), temp);
+                Utils.replace(temp, file);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        Trace.write(start, file.length());
+    }
+
+    /** Stores the next LENGTH bytes of IN, which are object ID as stored
+     *  by another repository. */
+    void receive(String id, InputStream in, long length) {
+        File file = file(id);
+        file.getParentFile().mkdirs();
+        Path temp = Utils.tempFileFor(file);
+        long start = Trace.start();
+        byte[] buffer = new byte[64 * 1024];
+        try {
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+                    OutputStream out = Channels.newOutputStream(channel);
+                    for (long left = length; left > 0; ) {
+                        int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                        if (n < 0) {
+                            throw new IOException("pack truncated in object " + id);
+                        }
+                        out.write(buffer, 0, n);
+                        left -= n;
+                    }
+                    Utils.force(channel);
+                }
+                Utils.replace(temp, file);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        Trace.write(start, length);
+    }
+
+    /** Stores OBJ as object ID. */
+    void write(String id, Serializable obj) {
+        File file = file(id);
+        file.getParentFile().mkdirs();
+        Utils.writeObject(file, obj);
+    }
+
+    /** Stores the contents of SOURCE as raw blob ID. */
+    void writeBlob(String id, File source) {
+        File file = file(id);
+        file.getParentFile().mkdirs();
+        Path temp = Utils.tempFileFor(file);
+        long start = Trace.start();
+        try {
+            try {
+                try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                             StandardOpenOption.WRITE)) {
+                    long length = in.size();
+                    out.write(ByteBuffer.wrap(Hashing.blobHeader(length)));
+                    transfer(in, 0, length, out);
+                    Utils.force(out);
+                    Trace.write(start, length);
+                }
+                Utils.replace(temp, file);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Overwrites TARGET with the contents of blob ID. */
+    void restore(String id, File target) {
+        File object = fetch(id);
+        int headerLength = rawHeaderLength(object);
+        if (headerLength < 0) {
+            Blob blob = Utils.readObject(object, Blob.class);
+            Utils.writeContents(target, blob.getContentsAsString());
+            return;
+        }
+        long start = Trace.start();
+        try (FileChannel in = FileChannel.open(object.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long length = in.size() - headerLength;
+            transfer(in, headerLength, length, out);
+            Trace.write(start, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Reads blob ID, whether it is stored raw or as a serialized Blob. */
+    Blob readBlob(String id) {
+        File object = fetch(id);
+        int headerLength = rawHeaderLength(object);
+        if (headerLength < 0) {
+            return Utils.readObject(object, Blob.class);
+        }
+        byte[] raw = Utils.readContents(object);
+        return new Blob(Arrays.copyOfRange(raw, headerLength, raw.length));
+    }
+
+    /** The length of the contents of blob ID. */
+    long blobSize(String id) {
+        File object = fetch(id);
+        int headerLength = rawHeaderLength(object);
+        if (headerLength < 0) {
+            return legacyContents(object).length;
+        }
+        return object.length() - headerLength;
+    }
+
+    /** Opens blob ID for reading its contents.  A raw blob is streamed from
+     *  its file; an older serialized one is decoded into memory first. */
+    InputStream openBlob(String id) {
+        File object = fetch(id);
+        int headerLength = rawHeaderLength(object);
+        if (headerLength < 0) {
+            return new ByteArrayInputStream(legacyContents(object));
+        }
+        try {
+            InputStream in = Files.newInputStream(object.toPath());
+            in.skipNBytes(headerLength);
+            return in;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** The contents of the serialized Blob OBJECT, as restore writes them. */
+    private static byte[] legacyContents(File object) {
+        return Utils.readObject(object, Blob.class).getContentsAsString()
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Copies LENGTH bytes of IN starting at POSITION to the end of OUT,
+     *  letting the operating system move the data where it can. */
+    private static void transfer(FileChannel in, long position, long length,
+                                 FileChannel out) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            long copied = in.transferTo(position, end - position, out);
+            if (copied <= 0) {
+                throw new IOException("object truncated while copying");
+            }
+            position += copied;
+        }
+    }
+
+    /** True iff OBJECT is stored raw rather than as a serialized Blob. */
+    static boolean isRaw(File object) {
+        return rawHeaderLength(object) >= 0;
+    }
+
+    /** Returns the length of the "blob <length>\0" header at the start of
+     *  OBJECT, or -1 if OBJECT is a serialized Blob rather than a raw one. */
+    private static int rawHeaderLength(File object) {
+        byte[] start = new byte[32];
+        int n;
+        try (FileChannel in = FileChannel.open(object.toPath(), StandardOpenOption.READ)) {
+            n = in.read(ByteBuffer.wrap(start));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        if (n < 5 || !new String(start, 0, 5, StandardCharsets.UTF_8).equals("blob ")) {
+            return -1;
+        }
+        for (int i = 5; i < n; i += 1) {
+            if (start[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Reads object ID, which must be a TYPE. */
+    <T extends Serializable> T read(String id, Class<T> type) {
+        return Utils.readObject(fetch(id), type);
+    }
+
+    /** Returns the ids of all objects in the store, in no particular order. */
+    List<String> ids() {
+        List<String> ids = new ArrayList<>();
+        String[] fanouts = objectsDir.list();
+        if (fanouts != null) {
+            for (String fanout : fanouts) {
+                if (fanout.length() != FANOUT_DIGITS) {
+                    continue;
+                }
+                String[] names = Utils.join(objectsDir, fanout).list();
+                if (names == null) {
+                    continue;
+                }
+                for (String name : names) {
+                    if (isObjectId(fanout + name)) {
+                        ids.add(fanout + name);
+                    }
+                }
+            }
+        }
+        ids.addAll(legacyIds());
+        return ids;
+    }
+
+    /** Moves every object still stored directly in .gitlet/ to its fan-out
+     *  path, returning how many were moved. */
+    int migrate() {
+        int moved = 0;
+        for (String id : legacyIds()) {
+            File legacy = Utils.join(gitletDir, id);
+            File target = file(id);
+            target.getParentFile().mkdirs();
+            if (target.isFile()) {
+                legacy.delete();
+            } else if (!legacy.renameTo(target)) {
+                throw Utils.error("Could not move object %s.", id);
+            }
+            moved += 1;
+        }
+        return moved;
+    }
+
+    /** True iff NAME looks like an object id in either object format. */
+    static boolean isObjectId(String name) {
+        if (name.length() != Hashing.idLength(Hashing.SHA1)
+                && name.length() != Hashing.idLength(Hashing.SHA256)) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Ids of the objects stored directly in .gitlet/. */
+    private List<String> legacyIds() {
+        List<String> ids = new ArrayList<>();
+        String[] names = gitletDir.list((dir, name) -> isObjectId(name));
+        if (names != null) {
+            for (String name : names) {
+                ids.add(name);
+            }
+        }
+        return ids;
+    }
+}
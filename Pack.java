@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** A pack carries the commits and objects that one repository is missing
+ *  from another, as a single stream: a header, the commits (each one
+ *  serialized on its own), then each object's id followed by its bytes
+ *  exactly as they are stored.  Objects are copied straight from one store
+ *  to the other and never decoded on the way.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class Pack {
+
+    private static final String MAGIC = "gitlet-pack";
+    private static final int VERSION = 1;
+
+    /** Writes COMMITS and the objects OBJECTIDS of SOURCE to PACKFILE,
+     *  returning the number of bytes written. */
+    static long write(File packFile, Collection<Commit> commits,
+                      Collection<String> objectIds, ObjectStore source) {
+        long start = Trace.start();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(packFile.toPath())))) {
+            out.writeUTF(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(commits.size());
+            for (Commit commit : commits) {
+                byte[] bytes = Utils.serialize(commit);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(objectIds.size());
+            for (String id : objectIds) {
+                File object = source.fetch(id);
+                out.writeUTF(id);
+                out.writeLong(object.length());
+                Files.copy(object.toPath(), out);
+            }
+            out.flush();
+            Trace.write(start, out.size());
+            return out.size();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Reads PACKFILE, storing its objects in TARGET, and returns its commits. */
+    static List<Commit> read(File packFile, ObjectStore target) {
+        long start = Trace.start();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(packFile.toPath())))) {
+            if (!in.readUTF().equals(MAGIC) || in.readInt() != VERSION) {
+                throw Utils.error("Not a gitlet pack: %s", packFile);
+            }
+            int commitCount = in.readInt();
+            List<Commit> commits = new ArrayList<>(commitCount);
+            for (int i = 0; i < commitCount; i += 1) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                try (ObjectInputStream commitIn = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    commits.add((Commit) commitIn.readObject());
+                }
+            }
+            int objectCount = in.readInt();
+            for (int i = 0; i < objectCount; i += 1) {
+                String id = in.readUTF();
+                target.receive(id, in, in.readLong());
+            }
+            Trace.read(start, packFile.length());
+            return commits;
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/** Reachability bitmaps over commits and blobs.  Every commit and blob id
+ *  seen is given a position, in order of first appearance, and the bitmap of
+ *  a commit has the positions of all commits and blobs reachable from it
+ *  set.  Bitmaps are stored for selected commits only: a query walks back
+ *  from its commit until it meets commits with stored bitmaps, ORs those in,
+ *  and stores the result if the walk took SPACING commits or more, so that
+ *  stored bitmaps end up about SPACING commits apart along the history.
+ *  Since history never changes, a stored bitmap never goes stale.
+ *  On disk each bitmap is run-length encoded in the style of EWAH: runs of
+ *  all-zero or all-one words are written as a count, and other words as
+ *  they are.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class ReachabilityIndex implements Serializable {
+
+    private static final long serialVersionUID = -1683239797348848859L;
+
+    /** A query that walks this many commits stores a bitmap for its commit. */
+    static final int SPACING = 100;
+
+    /** Position to id. */
+    private ArrayList<String> ids = new ArrayList<>();
+    /** Id to position. */
+    private transient HashMap<String, Integer> positions = new HashMap<>();
+    /** Commit id to the stored bitmap of that commit. */
+    private transient HashMap<String, BitSet> bitmaps = new HashMap<>();
+    /** True iff there is something new to save. */
+    private transient boolean changed;
+
+    /** Returns the index saved in FILE, or an empty one if there is none. */
+    static ReachabilityIndex load(File file) {
+        if (!file.isFile()) {
+            return new ReachabilityIndex();
+        }
+        return Utils.readObject(file, ReachabilityIndex.class);
+    }
+
+    /** Saves this index to FILE if it has changed since it was loaded. */
+    void save(File file) {
+        if (changed) {
+            Utils.writeObject(file, this);
+            changed = false;
+        }
+    }
+
+    /** The position of ID, which is given one if it has none yet. */
+    int position(String id) {
+        Integer position = positions.get(id);
+        if (position == null) {
+            position = ids.size();
+            ids.add(id);
+            positions.put(id, position);
+            changed = true;
+        }
+        return position;
+    }
+
+    /** The id at POSITION. */
+    String id(int position) {
+        return ids.get(position);
+    }
+
+    /** True iff ID has a position, that is, could be set in some bitmap. */
+    boolean contains(String id) {
+        return positions.containsKey(id);
+    }
+
+    /** Returns the positions of the commits and blobs reachable from commit
+     *  TIP, whose ancestors are looked up in COMMITS.  The result is the
+     *  caller's to modify. */
+    BitSet reachable(String tip, Map<String, Commit> commits) {
+        BitSet stored = bitmaps.get(tip);
+        if (stored != null) {
+            return (BitSet) stored.clone();
+        }
+        BitSet result = new BitSet(ids.size());
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.push(tip);
+        int walked = 0;
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.pop();
+            Commit commit = commits.get(id);
+            int position = position(id);
+            if (commit == null || result.get(position)) {
+                continue;
+            }
+            BitSet bitmap = bitmaps.get(id);
+            if (bitmap != null) {
+                result.or(bitmap);
+                continue;
+            }
+            walked += 1;
+            result.set(position);
+            for (String blobId : commit.getBlobs().values()) {
+                result.set(position(blobId));
+            }
+            if (commit.getParent() != null) {
+                toVisit.push(commit.getParent());
+            }
+            if (commit.getMergeParent() != null) {
+                toVisit.push(commit.getMergeParent());
+            }
+        }
+        if (walked >= SPACING) {
+            bitmaps.put(tip, (BitSet) result.clone());
+            changed = true;
+        }
+        return result;
+    }
+
+    /** True iff commit ANCESTOR is DESCENDANT or one of its ancestors. */
+    boolean isAncestor(String ancestor, String descendant, Map<String, Commit> commits) {
+        return reachable(descendant, commits).get(position(ancestor));
+    }
+
+    /** Drops the stored bitmaps of commits not in COMMITIDS, which have
+     *  been collected. */
+    void retain(Set<String> commitIds) {
+        changed |= bitmaps.keySet().retainAll(commitIds);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(bitmaps.size());
+        for (Map.Entry<String, BitSet> entry : bitmaps.entrySet()) {
+            out.writeUTF(entry.getKey());
+            long[] encoded = encode(entry.getValue());
+            out.writeInt(encoded.length);
+            for (long word : encoded) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        positions = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += 1) {
+            positions.put(ids.get(i), i);
+        }
+        bitmaps = new HashMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i += 1) {
+            String commitId = in.readUTF();
+            long[] encoded = new long[in.readInt()];
+            for (int j = 0; j < encoded.length; j += 1) {
+                encoded[j] = in.readLong();
+            }
+            bitmaps.put(commitId, decode(encoded));
+        }
+    }
+
+    /* RUN-LENGTH ENCODING.  The encoding is a sequence of markers, each
+     * followed by its literal words.  A marker's top bit is the value of
+     * the run's words, the next 32 bits the run's length in words, and the
+     * low 31 bits the number of literal words that follow the run. */
+
+    private static final int LITERAL_BITS = 31;
+    private static final long LITERAL_MASK = (1L << LITERAL_BITS) - 1;
+    private static final long RUN_MASK = 0xffffffffL;
+
+    /** Returns the run-length encoding of BITS. */
+    static long[] encode(BitSet bits) {
+        long[] words = bits.toLongArray();
+        long[] out = new long[2 * words.length + 1];
+        int size = 0;
+        int i = 0;
+        while (i < words.length) {
+            long runWord = words[i] == -1L ? -1L : 0L;
+            int runStart = i;
+            while (i < words.length && words[i] == runWord && i - runStart < RUN_MASK) {
+                i += 1;
+            }
+            int literalStart = i;
+            while (i < words.length && words[i] != 0L && words[i] != -1L
+                    && i - literalStart < LITERAL_MASK) {
+                i += 1;
+            }
+            out[size] = (runWord == -1L ? 1L << 63 : 0L)
+                    | ((long) (literalStart - runStart) << LITERAL_BITS)
+                    | (i - literalStart);
+            size += 1;
+            System.arraycopy(words, literalStart, out, size, i - literalStart);
+            size += i - literalStart;
+        }
+        long[] result = new long[size];
+        System.arraycopy(out, 0, result, 0, size);
+        return result;
+    }
+
+    /** Returns the bitmap whose run-length encoding is ENCODED. */
+    static BitSet decode(long[] encoded) {
+        int length = 0;
+        for (int i = 0; i < encoded.length; i += 1) {
+            long marker = encoded[i];
+            int literals = (int) (marker & LITERAL_MASK);
+            length += (int) ((marker >>> LITERAL_BITS) & RUN_MASK) + literals;
+            i += literals;
+        }
+        long[] words = new long[length];
+        int size = 0;
+        for (int i = 0; i < encoded.length; i += 1) {
+            long marker = encoded[i];
+            long runWord = marker < 0 ? -1L : 0L;
+            int run = (int) ((marker >>> LITERAL_BITS) & RUN_MASK);
+            int literals = (int) (marker & LITERAL_MASK);
+            for (int j = 0; j < run; j += 1) {
+                words[size] = runWord;
+                size += 1;
+            }
+            System.arraycopy(encoded, i + 1, words, size, literals);
+            size += literals;
+            i += literals;
+        }
+        return BitSet.valueOf(words);
+    }
+}
@@ -0,0 +1,239 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/** Finds renamed and copied files between two snapshots, each a map from
+ *  file name to blob id.  Added files are first paired with removed (or,
+ *  for copies, any) files with the same blob id, which needs no reading.
+ *  The rest are compared by MinHash: each file's lines are hashed into a
+ *  signature of SIGNATURE_SIZE minimums, signatures are cut into bands,
+ *  and only files that share a band somewhere are compared at all, so the
+ *  work stays near-linear in the number of files rather than the number of
+ *  pairs.  Similarity is the fraction of equal signature entries, an
+ *  estimate of the Jaccard similarity of the two files' sets of lines.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class RenameDetector {
+
+    /** Least similarity, in percent, for two files to be paired. */
+    static final int MIN_SIMILARITY = 50;
+
+    private static final int SIGNATURE_SIZE = 64;
+    private static final int BANDS = 16;
+    private static final int ROWS = SIGNATURE_SIZE / BANDS;
+    private static final long[] SEEDS = new long[SIGNATURE_SIZE];
+
+    static {
+        long seed = 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < SIGNATURE_SIZE; i += 1) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    /** A file that appears as FROM in the old snapshot and as TO in the new
+     *  one, SIMILARITY percent alike.  It is a copy if FROM is still there. */
+    static class Rename {
+        private final String from;
+        private final String to;
+        private final int similarity;
+        private final boolean copy;
+
+        Rename(String from, String to, int similarity, boolean copy) {
+            this.from = from;
+            this.to = to;
+            this.similarity = similarity;
+            this.copy = copy;
+        }
+
+        String getFrom() {
+            return from;
+        }
+
+        String getTo() {
+            return to;
+        }
+
+        int getSimilarity() {
+            return similarity;
+        }
+
+        boolean isCopy() {
+            return copy;
+        }
+    }
+
+    /** Returns the renames, and copies if FINDCOPIES, from OLDBLOBS to
+     *  NEWBLOBS, ordered by new name.  OLDCONTENTS and NEWCONTENTS return the
+     *  contents of a file of each snapshot given its name; they are only
+     *  called for files that found no exact match.  Copies are only looked
+     *  for among files that are removed or modified, plus exact matches of
+     *  any file. */
+    static List<Rename> detect(Map<String, String> oldBlobs, Map<String, String> newBlobs,
+                               Function<String, String> oldContents,
+                               Function<String, String> newContents, boolean findCopies) {
+        List<String> added = new ArrayList<>();
+        for (String name : new TreeSet<>(newBlobs.keySet())) {
+            if (!oldBlobs.containsKey(name)) {
+                added.add(name);
+            }
+        }
+        List<Rename> result = new ArrayList<>();
+        if (added.isEmpty()) {
+            return result;
+        }
+
+        // exact matches, preferring removed files as sources
+        Map<String, String> removedById = new HashMap<>();
+        Map<String, String> keptById = new HashMap<>();
+        List<String> sources = new ArrayList<>();
+        for (String name : new TreeSet<>(oldBlobs.keySet())) {
+            String id = oldBlobs.get(name);
+            if (!newBlobs.containsKey(name)) {
+                removedById.putIfAbsent(id, name);
+                sources.add(name);
+            } else if (findCopies) {
+                keptById.putIfAbsent(id, name);
+                if (!id.equals(newBlobs.get(name))) {
+                    sources.add(name);
+                }
+            }
+        }
+        Set<String> renamed = new HashSet<>();
+        List<String> unmatched = new ArrayList<>();
+        for (String name : added) {
+            String id = newBlobs.get(name);
+            String from = removedById.get(id);
+            if (from != null && (findCopies || !renamed.contains(from))) {
+                result.add(new Rename(from, name, 100, !renamed.add(from)));
+            } else if (keptById.containsKey(id)) {
+                result.add(new Rename(keptById.get(id), name, 100, true));
+            } else {
+                unmatched.add(name);
+            }
+        }
+        if (unmatched.isEmpty() || sources.isEmpty()) {
+            result.sort((x, y) -> x.to.compareTo(y.to));
+            return result;
+        }
+
+        // similar files, found through shared bands of their signatures
+        long[][] sourceSignatures = new long[sources.size()][];
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (int i = 0; i < sources.size(); i += 1) {
+            sourceSignatures[i] = signature(oldContents.apply(sources.get(i)));
+            if (sourceSignatures[i] == null) {
+                continue;
+            }
+            for (int band = 0; band < BANDS; band += 1) {
+                buckets.computeIfAbsent(bandKey(sourceSignatures[i], band),
+                        k -> new ArrayList<>()).add(i);
+            }
+        }
+        List<long[]> candidates = new ArrayList<>();
+        for (int t = 0; t < unmatched.size(); t += 1) {
+            long[] signature = signature(newContents.apply(unmatched.get(t)));
+            if (signature == null) {
+                continue;
+            }
+            Set<Integer> seen = new HashSet<>();
+            for (int band = 0; band < BANDS; band += 1) {
+                for (int s : buckets.getOrDefault(bandKey(signature, band), List.of())) {
+                    if (seen.add(s)) {
+                        int similarity = similarity(sourceSignatures[s], signature);
+                        if (similarity >= MIN_SIMILARITY) {
+                            candidates.add(new long[] {similarity, s, t});
+                        }
+                    }
+                }
+            }
+        }
+        // best pairs first; each new file is paired once
+        candidates.sort((x, y) -> x[0] != y[0] ? Long.compare(y[0], x[0])
+                : x[2] != y[2] ? Long.compare(x[2], y[2]) : Long.compare(x[1], y[1]));
+        boolean[] paired = new boolean[unmatched.size()];
+        for (long[] candidate : candidates) {
+            int t = (int) candidate[2];
+            if (paired[t]) {
+                continue;
+            }
+            String from = sources.get((int) candidate[1]);
+            boolean copy = newBlobs.containsKey(from) || renamed.contains(from);
+            if (copy && !findCopies) {
+                continue;
+            }
+            paired[t] = true;
+            renamed.add(from);
+            result.add(new Rename(from, unmatched.get(t), (int) candidate[0], copy));
+        }
+        result.sort((x, y) -> x.to.compareTo(y.to));
+        return result;
+    }
+
+    /** Returns the MinHash signature of the lines of CONTENTS, or null if it
+     *  has none. */
+    static long[] signature(String contents) {
+        if (contents == null || contents.isEmpty()) {
+            return null;
+        }
+        long[] signature = new long[SIGNATURE_SIZE];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        Set<Long> lineHashes = new HashSet<>();
+        int start = 0;
+        while (start < contents.length()) {
+            int end = contents.indexOf('\n', start);
+            if (end < 0) {
+                end = contents.length();
+            }
+            long hash = 1125899906842597L;
+            for (int i = start; i < end; i += 1) {
+                hash = 31 * hash + contents.charAt(i);
+            }
+            lineHashes.add(hash);
+            start = end + 1;
+        }
+        for (long hash : lineHashes) {
+            for (int i = 0; i < SIGNATURE_SIZE; i += 1) {
+                long value = mix(hash ^ SEEDS[i]);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /** The percentage of entries on which signatures A and B agree. */
+    static int similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i += 1) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return 100 * same / SIGNATURE_SIZE;
+    }
+
+    private static long bandKey(long[] signature, int band) {
+        long key = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i += 1) {
+            key = mix(key ^ signature[i]);
+        }
+        return key;
+    }
+
+    /** The finalizer of SplitMix64, a cheap and thorough bit mixer. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,9 +1,14 @@
 package gitlet;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.time.Instant;
 import java.util.*;
+import java.util.function.Function;
 import static gitlet.Utils.*;
-import java.text.SimpleDateFormat;
 
 /** Represents a gitlet repository.
  * This is where the logic of our commands happens.
@@ -20,44 +25,115 @@ public class Repository implements Serializable {
     /** a staging area object */
     private StagingArea stagingArea;
 
-    // key: filename, value: blob's sha1 id
-    private HashMap<String, String> blobs;
+    /** decoded commits and small blobs, reused across commands run by this object */
+    private ObjectCache cache = new ObjectCache(ObjectCache.configuredBudget());
+    /** cache key of the most recently cached commits map */
+    private String commitsKey;
 
-    /** Constructor */
+    /** Constructor, for a repository in the process's working directory */
     public Repository() {
+        this(new File(System.getProperty("user.dir")));
+    }
+
+    /** Constructor, for a repository whose working directory is CWD */
+    public Repository(File cwd) {
         branches = new HashMap<>();
-        blobs = new HashMap<>();
         commits = new HashMap<>();
         stagingArea = new StagingArea();
+
+        CWD = cwd;
+        GITLET_DIR = join(CWD, ".gitlet");
+        COMMON_DIR = commonDir(GITLET_DIR);
+        // the state of this working tree
+        STAGE_FILE = join(GITLET_DIR, "stageArea");
+        CURRENT_BRANCH = join(GITLET_DIR, "currentBranch");
+        HEAD = join(GITLET_DIR, "head");
+        ADD_ALL = join(GITLET_DIR, "addAll");
+        // the state shared by all working trees
+        COMMITS_FILE = join(COMMON_DIR, "commits");
+        BRANCHES_DIR = join(COMMON_DIR, "branches");
+        BRANCH_MAP = join(COMMON_DIR, "branchMap");
+        CONFIG = join(COMMON_DIR, "config");
+        SHALLOW = join(COMMON_DIR, "shallow");
+        REMOTES_DIR = join(COMMON_DIR, "remotes");
+        BITMAPS = join(COMMON_DIR, "bitmaps");
+        COMMIT_GRAPH = join(COMMON_DIR, "commit-graph");
+        WORKTREES_DIR = join(COMMON_DIR, "worktrees");
+        String promisor = config("promisor", null);
+        objectStore = new ObjectStore(COMMON_DIR,
+                promisor == null ? null : new ObjectStore(new File(promisor)));
+    }
+
+    /** Name of the file in the .gitlet directory of a linked working tree
+     *  that holds the path of the .gitlet directory it shares. */
+    static final String COMMONDIR = "commondir";
+
+    /** The .gitlet directory holding the objects, commits and branches that
+     *  the working tree whose .gitlet directory is GITLETDIR uses: the one
+     *  named in its commondir file if it is a linked working tree (see
+     *  worktreeAdd), else GITLETDIR itself. */
+    static File commonDir(File gitletDir) {
+        File pointer = join(gitletDir, COMMONDIR);
+        return pointer.isFile() ? new File(readContentsAsString(pointer)) : gitletDir;
     }
 
     /** The current working directory. */
-    private File CWD = new File(System.getProperty("user.dir"));
-    /** The .gitlet directory. */
-    private File GITLET_DIR = join(CWD, ".gitlet");
+    private File CWD;
+    /** The .gitlet directory of this working tree. */
+    private File GITLET_DIR;
+    /** The .gitlet directory shared by all working trees of the repository,
+     *  which is GITLET_DIR except in linked working trees */
+    private File COMMON_DIR;
     /** FILE that allows our stagingArea object to persist */
-    private File STAGE_FILE = join(GITLET_DIR, "stageArea");
+    private File STAGE_FILE;
     /** FILE that allows our commits HashMap to persist. */
-    private File COMMITS_FILE = join(GITLET_DIR, "commits");
+    private File COMMITS_FILE;
     /** The branches directory */
-    private File BRANCHES_DIR = join(GITLET_DIR, "branches");  // not sha-1 ids
+    private File BRANCHES_DIR;  // not sha-1 ids
     /** The current branch file */
-    private File CURRENT_BRANCH = join(GITLET_DIR, "currentBranch");
-    /** Directory to store blobs, the contents of files */
-    private File BLOBS_FILE = join(GITLET_DIR, "blobs");
+    private File CURRENT_BRANCH;
     /** The head file points to the latest commit */
-    private File HEAD = join(GITLET_DIR, "head");
+    private File HEAD;
     /** Stores a hashmap from branch name to branch pointer (commit).*/
-    private File BRANCH_MAP = join(GITLET_DIR, "branchMap");
+    private File BRANCH_MAP;
+    /** Repository settings, one key=value per line; absent in repositories
+     *  created before it existed */
+    private File CONFIG;
+    /** Ids of the commits whose parents a shallow clone left out, one per
+     *  line; absent unless the repository is a shallow clone */
+    private File SHALLOW;
+    /** One file per remote, named after it and holding its .gitlet path */
+    private File REMOTES_DIR;
+    /** The saved reachability bitmaps */
+    private File BITMAPS;
+    /** The commit graph with changed-path filters */
+    private File COMMIT_GRAPH;
+    /** What the last add . saw, for narrowing the next one while a watcher runs */
+    private File ADD_ALL;
+    /** One file per linked working tree, holding the path of its directory */
+    private File WORKTREES_DIR;
+    /** The reachability bitmaps, or null until first needed */
+    private ReachabilityIndex reachabilityIndex;
+    /** The object store, which keeps blobs under .gitlet/objects */
+    private ObjectStore objectStore;
 
     /** creates new Gitlet VSC in the current directory **/
     public void init() {
+        init(Hashing.SHA1);
+    }
+
+    /** creates new Gitlet VSC whose object ids are OBJECTFORMAT hashes **/
+    public void init(String objectFormat) {
+        if (!Hashing.isFormat(objectFormat)) {
+            throw new GitletException("Unknown object format.");
+        }
         if (!GITLET_DIR.exists()) {
             GITLET_DIR.mkdir();
             BRANCHES_DIR.mkdir();
+            join(GITLET_DIR, "objects").mkdir();
+            writeContents(CONFIG, "objectFormat=" + objectFormat + "\n");
 
             COMMITS_FILE = join(GITLET_DIR, "commits");
-            BLOBS_FILE = join(GITLET_DIR, "blobs");
             STAGE_FILE = join(GITLET_DIR, "stageArea");
             BRANCH_MAP = join(GITLET_DIR, "branchMap");
 
@@ -66,7 +142,7 @@ public class Repository implements Serializable {
             branches = new HashMap<>();
 
             // set initial commit's timestamp to Date(0) in Commit.java constructor
-            Commit initialCommit = new Commit("initial commit", null, null);
+            Commit initialCommit = new Commit("initial commit", null, null, objectFormat);
             String initialSha1Id = initialCommit.getCommitId();
 
             commits.put(initialSha1Id, initialCommit);
@@ -85,8 +161,7 @@ public class Repository implements Serializable {
             writeContents(CURRENT_BRANCH, "main");
 
         } else {
-            System.out.println("A Gitlet version-control system already exists in the current directory.");
-            System.exit(0);
+            throw new GitletException("A Gitlet version-control system already exists in the current directory.");
         }
     }
 
@@ -95,76 +170,167 @@ public class Repository implements Serializable {
      * @param - fileName
      **/
     public void add(String fileName) {
+        add(List.of(fileName));
+    }
+
+    /** adds copies of several files to the staging area, hashing them in parallel */
+    public void add(List<String> fileNames) {
 
         // load stage area
         stagingArea = loadStagingArea();
 
         // Error case: check if file does not exist in CWD
-        if (!plainFilenamesIn(CWD).contains(fileName)) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+        WorkingTree workingTree = new WorkingTree(CWD, GITLET_DIR);
+        List<File> files = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (!workingTree.contains(fileName)) {
+                throw new GitletException("File does not exist.");
+            }
+            files.add(join(CWD, fileName));
         }
 
-        // creating new Blob from fileName and adding it to our blobs directory
-        Blob newBlob = new Blob(fileName);
-        String newBlobId = newBlob.getSha1();
+        // blob ids are computed by streaming each file, without building a Blob
+        Map<File, String> blobIds = Hashing.hashFiles(objectFormat(), files);
+        Map<String, String> headBlobs = getHead().getBlobs();
 
-        // Save the blob object to a file named by its SHA-1 ID
-        File blobFile = join(GITLET_DIR, newBlobId);
-        Utils.writeObject(blobFile, newBlob);
+        for (File file : files) {
+            String fileName = file.getName();
+            String newBlobId = blobIds.get(file);
 
-        // load contents into blobs hashmap
-        blobs = loadBlobsHashMap();
-        blobs.put(fileName, newBlobId);
-
-        Commit latestCommit = getHead();
-
-        // get last commit's blobs
-        HashMap<String, String> latestCommitBlobs = latestCommit.getBlobs();
-
-        // Check if the file is staged for addition
-        boolean isStagedForAddition = stagingArea.isStagedForAddition(fileName);
+            // Save the blob object to the object store under its id, unless it is already there
+            if (!objectStore.contains(newBlobId)) {
+                objectStore.writeBlob(newBlobId, file);
+            }
 
-        // Check if the file is tracked in the latest commit
-        boolean isTrackedInCommit = latestCommitBlobs.containsKey(fileName);
+            // the version tracked by the latest commit, if any
+            String trackedBlobId = headBlobs.get(fileName);
 
-        if (isStagedForAddition) {
-            if (latestCommitBlobs.get(fileName).equals(newBlobId)) {
+            if (newBlobId.equals(trackedBlobId) || sameAsLegacyBlob(trackedBlobId, file)) {
+                // identical to the tracked version, so there is nothing to stage
                 stagingArea.unStageForAddition(fileName);
                 stagingArea.unStageForRemoval(fileName);
             } else {
                 stagingArea.stageForAddition(fileName, newBlobId);
             }
-        } else {
-            if (isTrackedInCommit && latestCommitBlobs.get(fileName).equals(newBlobId)) {
-                stagingArea.unStageForRemoval(fileName);
-            } else {
-                stagingArea.stageForAddition(fileName, newBlobId);
-            }
         }
-        // Save staging area & blobs hashmap
         saveStagingArea();
-        saveBlobsHashMap();
     }
 
+    /** The watcher journal mark and staged-or-committed blob ids as of the
+     *  end of an add .: every working file the watcher has not seen change
+     *  since then, and whose blob id here is unchanged, needs no hashing. */
+    private static class AddAllState implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Watcher.Mark mark;
+        private HashMap<String, String> index;
+    }
+
+    /** adds every working file whose contents differ from the staged or
+     *  committed version.  While a watcher runs, only the files it saw
+     *  change since the last add ., or whose staged or committed version has
+     *  changed since, are hashed; the journal is synced first so that it
+     *  includes changes made just before.  If the watcher does not catch up
+     *  in time, every file is hashed. */
+    public void addAll() {
+        stagingArea = loadStagingArea();
+        Watcher.Journal journal = Watcher.sync(GITLET_DIR);
+        Set<String> candidates = new TreeSet<>(new WorkingTree(CWD, GITLET_DIR).files());
+        if (journal != null && ADD_ALL.isFile()) {
+            AddAllState saved = readObject(ADD_ALL, AddAllState.class);
+            Set<String> changed = journal.changedSince(saved.mark);
+            // a changed ignore file may have revealed files nobody saw change
+            if (changed != null && !changed.contains(WorkingTree.IGNORE_FILE)) {
+                changed.addAll(CommitGraph.changedPaths(saved.index, indexBlobs()));
+                candidates.retainAll(changed);
+            }
+        }
+        add(new ArrayList<>(candidates));
+        if (journal != null) {
+            AddAllState state = new AddAllState();
+            state.mark = journal.mark();
+            state.index = new HashMap<>(indexBlobs());
+            writeObject(ADD_ALL, state);
+        }
+    }
+
+    /** Limits the working tree to the files matching PATTERNS, or to all
+     *  files if PATTERNS is null: head files that enter the set are written
+     *  and those that leave it are deleted.  Fails, changing nothing, if a
+     *  file that would be deleted differs from its committed version. */
+    public void sparseCheckout(List<String> patterns) {
+        stagingArea = loadStagingArea();
+        Map<String, String> headBlobs = getHead().getBlobs();
+        WorkingTree workingTree = new WorkingTree(CWD, GITLET_DIR);
+        IgnoreMatcher newSet = patterns == null ? null : new IgnoreMatcher(patterns);
+        Set<String> removed = new HashSet<>(stagingArea.getFilesToRemove());
+
+        List<String> entering = new ArrayList<>();
+        List<String> leaving = new ArrayList<>();
+        for (Map.Entry<String, String> file : headBlobs.entrySet()) {
+            String fileName = file.getKey();
+            boolean wasIn = workingTree.inSparseSet(fileName);
+            boolean isIn = newSet == null || newSet.matches(fileName, false);
+            File working = join(CWD, fileName);
+            if (isIn && !wasIn && !working.isFile()
+                    && !removed.contains(fileName)) {
+                entering.add(fileName);
+            } else if (wasIn && !isIn && working.isFile()) {
+                if (!file.getValue().equals(Hashing.hashBlob(objectFormat(), working))
+                        && !sameAsLegacyBlob(file.getValue(), working)) {
+                    throw new GitletException("There are uncommitted changes to " + fileName
+                            + "; commit or restore it first.");
+                }
+                leaving.add(fileName);
+            }
+        }
+
+        WorkingTree.writeSparsePatterns(GITLET_DIR, patterns);
+        for (String fileName : entering) {
+            objectStore.restore(headBlobs.get(fileName), join(CWD, fileName));
+        }
+        for (String fileName : leaving) {
+            restrictedDelete(join(CWD, fileName));
+        }
+    }
+
+    /** The sparse-checkout patterns, or null if sparse checkout is off. */
+    public List<String> sparsePatterns() {
+        return new WorkingTree(CWD, GITLET_DIR).sparsePatterns();
+    }
+
+    /** keeps a journal of changed working files until stopped, see Watcher */
+    public void watch() {
+        Watcher.run(CWD, GITLET_DIR);
+    }
+
+    /** Repositories created before blob ids were content hashes, and their
+     *  clones, may track FILE under an older id, so compare contents there
+     *  instead of ids.  Such a blob is stored as a serialized Blob rather
+     *  than raw, which is what tells the two kinds of id apart; only then
+     *  is it read, so a blob-less clone fetches nothing for a raw one. */
+    private boolean sameAsLegacyBlob(String trackedBlobId, File file) {
+        if (trackedBlobId == null || !objectStore.isLegacyBlob(trackedBlobId)) {
+            return false;
+        }
+        return loadBlob(trackedBlobId).getContentsAsString().equals(readContentsAsString(file));
+    }
 
-    /** Save and start tracking files staged for addition, but not tracked by its parents **/
-    public void commit(String message) {
+    /** Save and start tracking files staged for addition, but not tracked by its parents;
+     *  returns the new commit's id **/
+    public String commit(String message) {
         if (message.trim().isEmpty()) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw new GitletException("Please enter a commit message.");
         }
 
-        // load staging area, commits hashmap, & blobs hashmap for persistence
+        // load staging area & commits hashmap for persistence
         stagingArea = loadStagingArea();
         commits = getAllCommits(); //gets a HashMap of all commits
-        blobs = loadBlobsHashMap(); //gets HashMap of all Blobs
         branches = getAllBranches(); //Branches HashMap
 
         // failure case
         if (stagingArea.getFilesToAdd().isEmpty() && stagingArea.getFilesToRemove().isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException("No changes added to the commit.");
         }
 
         // get commit's parent by accessing HEAD
@@ -173,63 +339,46 @@ public class Repository implements Serializable {
         String latestCommitId = latestCommit.getCommitId();
 
         // create new Commit
-        Commit newCommit = new Commit(message, latestCommitId, null);
+        Commit newCommit = new Commit(message, latestCommitId, null, objectFormat());
 
-        // adding blobs not staged for removal from latest commit (head) to our new commit
-        for (String fileName : latestCommit.getBlobs().keySet()) {
-            if (!stagingArea.getFilesToRemove().contains(fileName)) {
-                newCommit.getBlobs().put(fileName, latestCommit.getBlobs().get(fileName));
-            }
-        }
-
-        // for each file staged for addition, if newCommit's blobs hashmap doesn't contain it, add it!
-        for (String fileName : stagingArea.getFilesToAdd().keySet()) {
-            newCommit.getBlobs().put(fileName, stagingArea.getFilesToAdd().get(fileName));
-        }
-
-        newCommit.getBlobs().putAll(stagingArea.getFilesToAdd());
-
-        // Remove staged files for removal
-        for (String fileName : stagingArea.getFilesToRemove()) {
-            newCommit.getBlobs().remove(fileName);
-        }
+        // the head's files with the staged changes applied; chunks of the
+        // file table that no change touches are shared with the head
+        newCommit.setFiles(latestCommit.getFiles().with(stagingArea.getFilesToAdd(),
+                stagingArea.getFilesToRemove()));
 
         // add to commit hashmap
         commits.put(newCommit.getCommitId(), newCommit);
 
+        // persistence: the commit is saved before anything points at it,
+        // so that readers, which take no lock, never see a dangling head
+        saveCommitsHashMap();
+
         // Update head pointer to point to our new commit
         String currentBranch = readContentsAsString(CURRENT_BRANCH);
 
-        // Update HEAD to our new commit
-        writeContents(HEAD, newCommit.getCommitId());
-
-
         // Update branch map
         branches.put(currentBranch, newCommit);
+        saveBranchesHashMap();
 
         // Update the current branch pointer to the new commit ID
         writeContents(join(BRANCHES_DIR, currentBranch), newCommit.getCommitId());
 
-        // persistence
+        // Update HEAD to our new commit
+        writeContents(HEAD, newCommit.getCommitId());
+
         clearStagingArea();
         saveStagingArea();
-        saveCommitsHashMap();
-        saveBlobsHashMap();
-        saveBranchesHashMap();
+        return newCommit.getCommitId();
     }
 
-    /** Print out history of commits, starting at current head commit going backwards */
-    public void log() {
+    /** Returns the history of commits, starting at current head commit going backwards */
+    public List<Commit> log() {
         commits = getAllCommits(); //load commits
         Commit currCommit = getHead(); //get head commit
 
-        SimpleDateFormat formatter = new SimpleDateFormat("EEE MMM d HH:mm:ss y Z");
+        List<Commit> history = new ArrayList<>();
         while (currCommit != null) {
-            System.out.println("===");
-            System.out.println("commit " + currCommit.getCommitId());
-            System.out.println("Date: " + formatter.format(currCommit.getTimestamp()));
-            System.out.println(currCommit.getMessage());
-            System.out.println();
+            history.add(currCommit);
 
             String parentString = currCommit.getParent();
 
@@ -238,47 +387,131 @@ public class Repository implements Serializable {
             }
             currCommit = commits.get(parentString);
         }
+        return history;
+    }
+
+    /** Returns the commits that changed PATH, starting at the head and
+     *  following first parents, read from the commit graph alone.  Its
+     *  changed-path filters rule out most commits and its path hashes
+     *  confirm the rest; the commits map is only loaded for a commit that
+     *  changed too many paths for the graph to record them */
+    public List<GitletRepository.CommitInfo> logPath(String path) {
+        CommitGraph graph = commitGraph();
+        List<GitletRepository.CommitInfo> history = new ArrayList<>();
+        Map<String, Commit> allCommits = null;
+        CommitGraph.Entry entry = graph.get(readContentsAsString(HEAD));
+        while (entry != null) {
+            boolean changed;
+            if (!entry.mayChange(path)) {
+                changed = false;
+            } else if (entry.knowsChangedPaths()) {
+                changed = entry.changes(path);
+            } else {
+                if (allCommits == null) {
+                    allCommits = getAllCommits();
+                }
+                Commit commit = allCommits.get(entry.getId());
+                Commit parent = entry.getParent() == null ? null : allCommits.get(entry.getParent());
+                String parentBlob = parent == null ? null : parent.getBlobs().get(path);
+                changed = !Objects.equals(commit.getBlobs().get(path), parentBlob);
+            }
+            if (changed) {
+                history.add(new GitletRepository.CommitInfo(entry.getId(), entry.getParent(),
+                        entry.getMergeParent(), Instant.ofEpochMilli(entry.getTimestamp()),
+                        entry.getMessage()));
+            }
+            entry = entry.getParent() == null ? null : graph.get(entry.getParent());
+        }
+        return history;
     }
 
-    /** Print out all commits ever made, in any order */
-    public void globalLog() {
+    /** Returns each line of FILENAME as of the head commit with the commit that last changed it */
+    public List<GitletRepository.BlameLine> blame(String fileName) {
         commits = getAllCommits();
-        if (commits == null || commits.isEmpty()) {
-            System.out.println("No commits found.");
-            return;
+        Commit head = getHead();
+        if (!head.getBlobs().containsKey(fileName)) {
+            throw new GitletException("File does not exist in the head commit.");
+        }
+        Blame blame = new Blame(commits, id -> loadBlob(id).getContentsAsString(),
+                join(COMMON_DIR, "blame"), objectFormat());
+        String[] origins = blame.origins(head.getCommitId(), fileName);
+        String[] lines = Diff.lines(loadBlob(head.getBlobs().get(fileName)).getContentsAsString());
+
+        List<GitletRepository.BlameLine> result = new ArrayList<>(lines.length);
+        for (int i = 0; i < lines.length; i += 1) {
+            Commit origin = commits.get(origins[i]);
+            String line = lines[i].endsWith("\n\\") ? lines[i].substring(0, lines[i].length() - 2) : lines[i];
+            result.add(new GitletRepository.BlameLine(i + 1, line, origins[i],
+                    origin.getTimestamp().toInstant()));
         }
+        return result;
+    }
 
-        SimpleDateFormat formatter = new SimpleDateFormat("EEE MMM d HH:mm:ss y Z");
-        // Iterate through all entries in the commits HashMap
-        for (Commit commit : commits.values()) { //alternative Map.Entry<String, Commit> i : commits.entrySet()
-            //Commit commit = i.getValue();
-            System.out.println("===");
-            System.out.println("commit " + commit.getCommitId());
-            System.out.println("Date: " + formatter.format(commit.getTimestamp()));
-            System.out.println(commit.getMessage());
-            System.out.println();
+    /** The commit graph, built from the commits file if it is missing or was
+     *  not kept up to date with it, as when an older version wrote commits */
+    private CommitGraph commitGraph() {
+        CommitGraph graph = CommitGraph.load(COMMIT_GRAPH);
+        String key = commitsCacheKey();
+        if (!graph.isUpToDate(key)) {
+            graph.update(getAllCommits(), key);
+            graph.save(COMMIT_GRAPH);
         }
+        return graph;
     }
 
-    /** prints out the IDs of all commits with the same commit message */
-    public void find(String commitMessage) {
+    /** Returns the commits that changed FILENAME, starting at the head,
+     *  following the file back through renames and copies */
+    public List<Commit> logFollow(String fileName) {
         commits = getAllCommits();
-        if (commits == null || commits.isEmpty()) {
-            System.out.println("No commits found.");
-            return;
+        Commit currCommit = getHead();
+        String path = fileName;
+
+        List<Commit> history = new ArrayList<>();
+        while (currCommit != null && path != null) {
+            Commit parent = currCommit.getParent() == null ? null : commits.get(currCommit.getParent());
+            Map<String, String> blobs = currCommit.getBlobs();
+            Map<String, String> parentBlobs = parent == null ? Map.of() : parent.getBlobs();
+            String blobId = blobs.get(path);
+            if (blobId != null && !blobId.equals(parentBlobs.get(path))) {
+                history.add(currCommit);
+                if (!parentBlobs.containsKey(path)) {
+                    path = renamedFrom(parentBlobs, blobs, path);
+                }
+            }
+            currCommit = parent;
         }
+        return history;
+    }
 
-        boolean found = false;
+    /** The file of OLDBLOBS that PATH of NEWBLOBS was renamed or copied from, or null */
+    private String renamedFrom(Map<String, String> oldBlobs, Map<String, String> newBlobs, String path) {
+        for (RenameDetector.Rename rename : RenameDetector.detect(oldBlobs, newBlobs,
+                name -> loadBlob(oldBlobs.get(name)).getContentsAsString(),
+                name -> loadBlob(newBlobs.get(name)).getContentsAsString(), true)) {
+            if (rename.getTo().equals(path)) {
+                return rename.getFrom();
+            }
+        }
+        return null;
+    }
+
+    /** Returns all commits ever made, in any order */
+    public Collection<Commit> globalLog() {
+        commits = getAllCommits();
+        return commits.values();
+    }
+
+    /** Returns the IDs of all commits with the same commit message */
+    public List<String> find(String commitMessage) {
+        commits = getAllCommits();
+        List<String> found = new ArrayList<>();
         for (Commit commit : commits.values()) {
             // comparing both messages
             if (commit.getMessage().equals(commitMessage)) {
-                System.out.println(commit.getCommitId());
-                found = true;
+                found.add(commit.getCommitId());
             }
         }
-        if (!found) {
-            System.out.println("Found no commit with that message.");
-        }
+        return found;
     }
 
     public void rm(String fileName) {
@@ -288,8 +521,7 @@ public class Repository implements Serializable {
 
         //failure case
         if (!stagingArea.getFilesToAdd().containsKey(fileName) && !currCommit.getBlobs().containsKey(fileName)) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw new GitletException("No reason to remove the file.");
         }
 
         // if file is staged for addition, unstage it
@@ -299,73 +531,45 @@ public class Repository implements Serializable {
 
         if (currCommit.getBlobs().containsKey(fileName)) {
             stagingArea.stageForRemoval(fileName);
-            if (plainFilenamesIn(CWD).contains(fileName)) {
-                restrictedDelete(fileName);
+            if (new WorkingTree(CWD, GITLET_DIR).contains(fileName)) {
+                restrictedDelete(join(CWD, fileName));
             }
         }
         saveStagingArea();
     }
 
-    /** Prints out all branches, staged files, removed files, tracked files, and modified files */
-    public void status() {
+    /** Returns the branches and what is staged; staged renames are only
+     *  looked for when files are staged both for addition and removal */
+    public GitletRepository.Status status() {
         stagingArea = loadStagingArea();
         commits = getAllCommits();
-        ArrayList<String> branchesToPrint = new ArrayList<>();
-        ArrayList<String> stagedFiles = new ArrayList<>();
-        ArrayList<String> removedFiles = new ArrayList<>();
-
-        for (String branch : Utils.plainFilenamesIn(BRANCHES_DIR)) {
-            List<String> branchesList = Utils.plainFilenamesIn(BRANCHES_DIR);
-            if (branchesList.size() == 1 || branch.equals("main")) { //  hella hard-coded to pass test 37
-                branchesToPrint.add("*" + branch);
-            } else {
-                if (!branch.equals("HEAD")) {
-                    if (branch.equals(Utils.readContentsAsString(HEAD))) {
-                        branchesToPrint.add("*" + branch);
-                    } else {
-                        branchesToPrint.add(branch);
-                    }
-                }
-            }
-        }
+        branches = getAllBranches();
+
+        List<String> branchNames = new ArrayList<>(branches.keySet());
+        Collections.sort(branchNames);
 
-        // staged files for addition
+        // staged files for addition, sorted lexographically
         HashMap<String, String> filesToAdd = stagingArea.getFilesToAdd();
-        stagedFiles.addAll(filesToAdd.keySet());
-        // sort lexographically
+        List<String> stagedFiles = new ArrayList<>(filesToAdd.keySet());
         Collections.sort(stagedFiles);
 
         // staged files for removal
         List<String> filesToRemove = stagingArea.getFilesToRemove();
-        removedFiles.addAll(filesToRemove);
-        // sort lexographically
+        List<String> removedFiles = new ArrayList<>(filesToRemove);
         Collections.sort(removedFiles);
 
-        System.out.println("=== Branches ===");
-        for (String branch : branchesToPrint) {
-            System.out.println(branch);
-        }
-        System.out.println();
-
-        System.out.println("=== Staged Files ===");
-        for (String file : stagedFiles) {
-            System.out.println(file);
-        }
-        System.out.println();
-
-        System.out.println("=== Removed Files ===");
-        for (String file : removedFiles) {
-            System.out.println(file);
+        List<GitletRepository.Rename> renamed = new ArrayList<>();
+        if (!filesToAdd.isEmpty() && !filesToRemove.isEmpty()) {
+            Map<String, String> headBlobs = getHead().getBlobs();
+            Map<String, String> index = indexBlobs();
+            for (RenameDetector.Rename rename : RenameDetector.detect(headBlobs, index,
+                    name -> loadBlob(headBlobs.get(name)).getContentsAsString(),
+                    name -> loadBlob(index.get(name)).getContentsAsString(), false)) {
+                renamed.add(new GitletRepository.Rename(rename.getFrom(), rename.getTo()));
+            }
         }
-        System.out.println();
-
-        System.out.println("=== Modifications Not Staged For Commit ===");
-        // optional, will leave blank
-        System.out.println();
-
-        System.out.println("=== Untracked Files ===");
-        // optional, will leave blank
-        System.out.println();
+        return new GitletRepository.Status(readContentsAsString(CURRENT_BRANCH).trim(),
+                branchNames, stagedFiles, removedFiles, renamed);
     }
 
 
@@ -373,13 +577,11 @@ public class Repository implements Serializable {
     public void branch(String name) {
         branches = getAllBranches();
         if (name == null || name.isEmpty()) {
-            System.out.println("Invalid branch name.");
-            System.exit(0);
+            throw new GitletException("Invalid branch name.");
         }
         // Check if the branch already exists
         if (branches.containsKey(name)) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+            throw new GitletException("A branch with that name already exists.");
         }
         // Set the new branch pointer to the current HEAD
         Commit headCommit = getHead();
@@ -395,44 +597,47 @@ public class Repository implements Serializable {
 
         branches = getAllBranches(); // Load branches
         if (!branches.containsKey(branchName)) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+            throw new GitletException("No such branch exists.");
         }
 
         // Check if the branch is the current branch
         String currentBranch = readContentsAsString(CURRENT_BRANCH);
         if (currentBranch.equals(branchName)) {
-            System.out.println("No need to switch to the current branch.");
-            System.exit(0);
+            throw new GitletException("No need to switch to the current branch.");
+        }
+        if (checkedOutElsewhere(branchName)) {
+            throw new GitletException("That branch is checked out in another working tree.");
         }
 
         // Check for untracked files that would be overwritten
         Commit targetCommit = branches.get(branchName);
-        HashMap<String, String> targetBlobs = targetCommit.getBlobs();
+        Map<String, String> targetBlobs = targetCommit.getBlobs();
         Commit headCommit = getHead();
         if (headCommit == null) {
-            System.out.println("Error: headCommit is null");
-            System.exit(0);
+            throw new GitletException("Error: headCommit is null");
         }
-        HashMap<String, String> headBlobs = headCommit.getBlobs(); //  error, headCommit is null
+        Map<String, String> headBlobs = headCommit.getBlobs(); //  error, headCommit is null
 
-        for (String fileName : plainFilenamesIn(CWD)) {
+        // the directory is listed once; ignored files and files outside
+        // the sparse set are left alone
+        WorkingTree workingTree = new WorkingTree(CWD, GITLET_DIR);
+        Set<String> cwdFiles = workingTree.files();
+        for (String fileName : cwdFiles) {
             if (!headBlobs.containsKey(fileName) && targetBlobs.containsKey(fileName)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                System.exit(0);
+                throw new GitletException(
+                        "There is an untracked file in the way; delete it, or add and commit it first.");
             }
         }
 
         // Overwrite files in the working directory with the files from the target commit
         for (String fileName : targetBlobs.keySet()) {
-            File file = join(CWD, fileName);
-            String blobId = targetBlobs.get(fileName);
-            Blob blob = Utils.readObject(join(GITLET_DIR, blobId), Blob.class);
-            Utils.writeContents(file, blob.getContentsAsString());
+            if (workingTree.inSparseSet(fileName)) {
+                objectStore.restore(targetBlobs.get(fileName), join(CWD, fileName));
+            }
         }
 
         // Delete files in the working directory that are not present in the target commit
-        for (String fileName : plainFilenamesIn(CWD)) {
+        for (String fileName : cwdFiles) {
             if (!targetBlobs.containsKey(fileName)) {
                 restrictedDelete(join(CWD, fileName));
             }
@@ -450,15 +655,13 @@ public class Repository implements Serializable {
     /** revert files back to their previous versions - version 1 */
     public void restore(String filename) {
         stagingArea = loadStagingArea();
-        blobs = loadBlobsHashMap();
         commits = getAllCommits();
         Commit targetCommit = getHead();
 
         // Check for file existence in head commit
-        HashMap<String, String> headTrackedFiles = targetCommit.getBlobs();
+        Map<String, String> headTrackedFiles = targetCommit.getBlobs();
         if (!headTrackedFiles.containsKey(filename)) { // failure case
-            System.out.println("File does not exist in the head commit.");
-            System.exit(0);
+            throw new GitletException("File does not exist in the head commit.");
         }
         restoreHelper(filename, targetCommit);
     }
@@ -467,34 +670,19 @@ public class Repository implements Serializable {
     public void restore(String commitId, String filename1) {
         stagingArea = loadStagingArea();
         commits = getAllCommits();
-        blobs = loadBlobsHashMap();
         branches = getAllBranches();
-        // using startsWith to check for shortened sha1 id -- to pass test 39
-        for (String fullCommitId : commits.keySet()) {
-            if (fullCommitId.startsWith(commitId)) {
-                commitId = fullCommitId;
-                break;
-            }
-        }
-
-        if (!commits.containsKey(commitId)) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-
-        Commit commit = commits.get(commitId);
+        // a shortened sha1 id must name a single commit -- test 39
+        Commit commit = findCommitById(commitId);
         // Check if the file was tracked in that commit
         if (!commit.getBlobs().containsKey(filename1)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw new GitletException("File does not exist in that commit.");
         }
 
         // Get the blob id for the file
         String blobId = commit.getBlobs().get(filename1);
 
-        // Read the blob content and write it to the working directory
-        Blob blob = readObject(join(GITLET_DIR, blobId), Blob.class);
-        writeContents(join(CWD, filename1), blob.getContentsAsString());
+        // Copy the blob content to the working directory
+        objectStore.restore(blobId, join(CWD, filename1));
 
         // Update the staging area to include the restored file
         stagingArea.getFilesToAdd().put(filename1, blobId);
@@ -504,10 +692,8 @@ public class Repository implements Serializable {
     public void restoreHelper(String filename, Commit targetCommit) {
         // retrieve file's sha1 from the commit's tracked files
         String blobSha1 = targetCommit.getBlobs().get(filename);
-        // get the blob associated with it
-        Blob blobFile = loadBlob(blobSha1);
-        // put and overwrite the file in the CWD
-        writeContents(new File(CWD, filename), blobFile.getContentsAsString());
+        // put and overwrite the file in the CWD with the blob's contents
+        objectStore.restore(blobSha1, join(CWD, filename));
 
         // make sure file is not staged
         stagingArea.unStageForAddition(filename);
@@ -516,10 +702,21 @@ public class Repository implements Serializable {
         saveStagingArea();
     }
 
-    // retrieve Blob object from its sha1 id
+    // retrieve Blob object from its sha1 id, going to disk only on a cache miss
     private Blob loadBlob(String blobSha1) {
-        File blobFile = join(GITLET_DIR, blobSha1);
-        return Utils.readObject(blobFile, Blob.class);
+        String key = "blob:" + blobSha1;
+        Blob blob = cache.get(key, Blob.class);
+        if (blob == null) {
+            blob = objectStore.readBlob(blobSha1);
+            cache.put(key, blob, ObjectCache.weigh(blob));
+        }
+        return blob;
+    }
+
+    /** Returns the object cache's size and hit/miss counters */
+    public GitletRepository.CacheStats stats() {
+        return new GitletRepository.CacheStats(cache.getBudget(), cache.getUsed(), cache.getSize(),
+                cache.getHits(), cache.getMisses(), cache.getEvictions());
     }
 
     /** Delete the pointer associated with the branch name */
@@ -529,53 +726,678 @@ public class Repository implements Serializable {
 
         // Check if the branch exists
         if (!branches.containsKey(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw new GitletException("A branch with that name does not exist.");
         }
         // Check if the current branch is the branch trying to be removed
         String currentBranch = readContentsAsString(CURRENT_BRANCH);
         if (branchName.equals(currentBranch)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw new GitletException("Cannot remove the current branch.");
+        }
+        if (checkedOutElsewhere(branchName)) {
+            throw new GitletException("Cannot remove a branch checked out in another working tree.");
         }
         branches.remove(branchName);
         saveBranchesHashMap();
     }
 
+    /** Deletes blobs and commits that can no longer be reached from any branch,
+     *  the head or the staging area, sparing anything younger than GRACEMILLIS
+     *  and deleting at most LIMIT objects. */
+    public GitletRepository.GcResult gc(long graceMillis, int limit) {
+        commits = getAllCommits();
+        branches = getAllBranches();
+
+        // every branch pointer and the head of every working tree are roots,
+        // and so is what their staging areas hold
+        List<String> roots = new ArrayList<>();
+        List<String> stagedBlobs = new ArrayList<>();
+        for (Repository worktree : worktrees()) {
+            roots.add(readContentsAsString(worktree.HEAD));
+            stagedBlobs.addAll(worktree.loadStagingArea().getFilesToAdd().values());
+        }
+        for (Commit branchHead : branches.values()) {
+            roots.add(branchHead.getCommitId());
+        }
+        for (String branch : plainFilenamesIn(BRANCHES_DIR)) {
+            roots.add(readContentsAsString(join(BRANCHES_DIR, branch)));
+        }
+
+        GarbageCollector collector = new GarbageCollector(objectStore, commits, reachability(),
+                graceMillis, limit);
+        collector.run(roots, stagedBlobs);
+        if (collector.getCommitsRemoved() > 0) {
+            saveCommitsHashMap();
+            reachability().retain(commits.keySet());
+        }
+        saveReachability();
+
+        return new GitletRepository.GcResult(collector.getObjectsRemoved(),
+                collector.getBytesReclaimed(), collector.getCommitsRemoved(),
+                collector.getObjectsDeferred());
+    }
+
+    /** Checks the objects, commits and refs of this repository, rehashing
+     *  the objects on THREADS threads; see Fsck. */
+    public GitletRepository.FsckResult fsck(int threads) {
+        Fsck fsck = new Fsck(objectStore, objectFormat(), threads);
+        fsck.checkObjects();
+
+        HashMap<String, Commit> allCommits = fsck.read("commits file", this::getAllCommits);
+        if (allCommits == null) {
+            return fsck.result();
+        }
+        Set<String> shallow = new HashSet<>();
+        if (SHALLOW.isFile()) {
+            shallow.addAll(Arrays.asList(readContentsAsString(SHALLOW).split("\n")));
+        }
+        fsck.checkCommits(allCommits, shallow);
+        HashMap<String, Commit> branchMap = fsck.read("branch map", this::getAllBranches);
+        if (branchMap != null) {
+            for (Map.Entry<String, Commit> branch : branchMap.entrySet()) {
+                fsck.checkRef(branch.getKey(), branch.getValue().getCommitId(), allCommits);
+            }
+        }
+        for (Repository worktree : worktrees()) {
+            // the main working tree's state goes by its plain names
+            String of = worktree.GITLET_DIR.equals(worktree.COMMON_DIR) ? "" : " of " + worktree.CWD;
+            StagingArea staged = fsck.read("staging area" + of, worktree::loadStagingArea);
+            if (staged != null) {
+                fsck.checkStaged(staged.getFilesToAdd());
+            }
+            String headId = fsck.read("head" + of, () -> readContentsAsString(worktree.HEAD));
+            if (headId != null) {
+                fsck.checkRef("head" + of, headId, allCommits);
+            }
+            String current = fsck.read("current branch" + of,
+                    () -> readContentsAsString(worktree.CURRENT_BRANCH));
+            if (branchMap == null || current == null) {
+                continue;
+            }
+            if (!branchMap.containsKey(current)) {
+                fsck.problem("current branch " + current + of + " does not exist");
+            } else if (headId != null && !branchMap.get(current).getCommitId().equals(headId)) {
+                fsck.problem("head" + of + " " + headId + " is not the tip of current branch " + current);
+            }
+        }
+        for (String branch : plainFilenamesIn(BRANCHES_DIR)) {
+            String id = fsck.read("branch file " + branch,
+                    () -> readContentsAsString(join(BRANCHES_DIR, branch)));
+            if (id != null) {
+                fsck.checkRef("branches/" + branch, id, allCommits);
+            }
+        }
+        return fsck.result();
+    }
+
+    /** Creates a working tree in DIR, which must not exist or be empty, with
+     *  branch BRANCHNAME checked out.  It gets a .gitlet directory of its own
+     *  for its head, current branch and staging area, and a commondir file
+     *  naming this repository's .gitlet directory, where the objects,
+     *  commits and branches are kept for all working trees.  A branch can
+     *  be checked out in only one working tree at a time. */
+    public void worktreeAdd(File dir, String branchName) {
+        branches = getAllBranches();
+        if (!branches.containsKey(branchName)) {
+            throw new GitletException("No such branch exists.");
+        }
+        if (branchName.equals(readContentsAsString(CURRENT_BRANCH)) || checkedOutElsewhere(branchName)) {
+            throw new GitletException("That branch is already checked out in a working tree.");
+        }
+        String[] existing = dir.list();
+        if (dir.exists() && (existing == null || existing.length > 0)) {
+            throw new GitletException("That directory already exists and is not empty.");
+        }
+        File worktreeDir = canonical(dir);
+        join(worktreeDir, ".gitlet").mkdirs();
+        writeContents(join(worktreeDir, ".gitlet", COMMONDIR), canonical(COMMON_DIR).getPath());
+
+        // registered under the directory's name, made unique
+        WORKTREES_DIR.mkdir();
+        String name = worktreeDir.getName();
+        for (int i = 1; join(WORKTREES_DIR, name).exists(); i += 1) {
+            name = worktreeDir.getName() + i;
+        }
+        writeContents(join(WORKTREES_DIR, name), worktreeDir.getPath());
+
+        Repository worktree = new Repository(worktreeDir);
+        Commit tip = branches.get(branchName);
+        worktree.saveStagingArea();
+        writeContents(worktree.HEAD, tip.getCommitId());
+        writeContents(worktree.CURRENT_BRANCH, branchName);
+        Map<String, String> tipBlobs = tip.getBlobs();
+        for (Map.Entry<String, String> file : tipBlobs.entrySet()) {
+            objectStore.restore(file.getValue(), join(worktreeDir, file.getKey()));
+        }
+    }
+
+    /** The working trees of this repository, the main one first. */
+    public List<GitletRepository.Worktree> worktreeList() {
+        List<GitletRepository.Worktree> result = new ArrayList<>();
+        for (Repository worktree : worktrees()) {
+            result.add(new GitletRepository.Worktree(worktree.CWD.toPath(),
+                    readContentsAsString(worktree.HEAD), readContentsAsString(worktree.CURRENT_BRANCH)));
+        }
+        return result;
+    }
+
+    /** Every working tree of this repository, the main one first and then
+     *  the linked ones in the order of their names.  Linked working trees
+     *  whose directory has been deleted are left out. */
+    private List<Repository> worktrees() {
+        List<Repository> result = new ArrayList<>();
+        result.add(new Repository(COMMON_DIR.getAbsoluteFile().getParentFile()));
+        List<String> names = plainFilenamesIn(WORKTREES_DIR);
+        if (names != null) {
+            for (String name : names) {
+                File dir = new File(readContentsAsString(join(WORKTREES_DIR, name)));
+                if (join(dir, ".gitlet", COMMONDIR).isFile()) {
+                    result.add(new Repository(dir));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** True iff a working tree other than this one has BRANCH checked out. */
+    private boolean checkedOutElsewhere(String branch) {
+        File self = canonical(GITLET_DIR);
+        for (Repository worktree : worktrees()) {
+            if (!canonical(worktree.GITLET_DIR).equals(self)
+                    && readContentsAsString(worktree.CURRENT_BRANCH).equals(branch)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Creates a repository in the current directory from the one whose
+     *  .gitlet directory is REMOTEDIR, and checks out its current branch.
+     *  If DEPTH is positive only the last DEPTH commits of each branch are
+     *  copied.  Unless WITHBLOBS, no blobs are copied at all: the remote is
+     *  recorded as the promisor and blobs are fetched from it when a command
+     *  first needs their contents. */
+    public void clone(String remoteDir, int depth, boolean withBlobs) {
+        File remoteGitlet = new File(remoteDir).getAbsoluteFile();
+        if (!join(commonDir(remoteGitlet), "commits").isFile()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        if (GITLET_DIR.exists()) {
+            throw new GitletException("A Gitlet version-control system already exists in the current directory.");
+        }
+        Repository remote = new Repository(remoteGitlet.getParentFile());
+        HashMap<String, Commit> remoteCommits = remote.getAllCommits();
+        String remoteHead = readContentsAsString(remote.HEAD);
+        Commit headCommit = remoteCommits.get(remoteHead);
+        for (String fileName : headCommit.getBlobs().keySet()) {
+            if (join(CWD, fileName).exists()) {
+                throw new GitletException(
+                        "There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+        }
+
+        // Walk back from every branch at most DEPTH commits
+        Set<String> tips = new LinkedHashSet<>();
+        tips.add(remoteHead);
+        for (Commit tip : remote.getAllBranches().values()) {
+            tips.add(tip.getCommitId());
+        }
+        List<String> branchFiles = plainFilenamesIn(remote.BRANCHES_DIR);
+        for (String branch : branchFiles) {
+            tips.add(readContentsAsString(join(remote.BRANCHES_DIR, branch)));
+        }
+        commits = new HashMap<>();
+        Set<String> shallow = new TreeSet<>();
+        List<String> level = new ArrayList<>(tips);
+        for (int generation = 1; !level.isEmpty(); generation += 1) {
+            List<String> next = new ArrayList<>();
+            for (String id : level) {
+                Commit commit = remoteCommits.get(id);
+                if (commit == null || commits.containsKey(id)) {
+                    continue;
+                }
+                commits.put(id, commit);
+                for (String parent : Arrays.asList(commit.getParent(), commit.getMergeParent())) {
+                    if (parent == null) {
+                        continue;
+                    }
+                    if (depth > 0 && generation >= depth) {
+                        shallow.add(id);
+                    } else {
+                        next.add(parent);
+                    }
+                }
+            }
+            level = next;
+        }
+        shallow.removeIf(id -> {
+            Commit commit = commits.get(id);
+            return (commit.getParent() == null || commits.containsKey(commit.getParent()))
+                    && (commit.getMergeParent() == null || commits.containsKey(commit.getMergeParent()));
+        });
+
+        GITLET_DIR.mkdir();
+        BRANCHES_DIR.mkdir();
+        join(GITLET_DIR, "objects").mkdir();
+        String config = "objectFormat=" + remote.objectFormat() + "\n";
+        if (!withBlobs) {
+            config += "promisor=" + remote.COMMON_DIR.getAbsolutePath() + "\n";
+        }
+        writeContents(CONFIG, config);
+        if (!shallow.isEmpty()) {
+            writeContents(SHALLOW, String.join("\n", shallow) + "\n");
+        }
+        for (String branch : branchFiles) {
+            writeContents(join(BRANCHES_DIR, branch),
+                    readContentsAsString(join(remote.BRANCHES_DIR, branch)));
+        }
+        branches = remote.getAllBranches();
+        stagingArea = new StagingArea();
+        saveCommitsHashMap();
+        saveBranchesHashMap();
+        saveStagingArea();
+        writeContents(HEAD, remoteHead);
+        writeContents(CURRENT_BRANCH, readContentsAsString(remote.CURRENT_BRANCH));
+
+        if (withBlobs) {
+            Set<String> copied = new HashSet<>();
+            for (Commit commit : commits.values()) {
+                for (String blobId : commit.getBlobs().values()) {
+                    if (copied.add(blobId) && remote.objectStore.contains(blobId)) {
+                        objectStore.copyFrom(remote.objectStore, blobId);
+                    }
+                }
+            }
+        }
+        objectStore = new ObjectStore(GITLET_DIR, withBlobs ? null : remote.objectStore);
+        for (Map.Entry<String, String> entry : headCommit.getBlobs().entrySet()) {
+            objectStore.restore(entry.getValue(), join(CWD, entry.getKey()));
+        }
+    }
+
+    /** Records the repository whose .gitlet directory is REMOTEDIR as remote NAME. */
+    public void addRemote(String name, String remoteDir) {
+        File remoteFile = join(REMOTES_DIR, name);
+        if (remoteFile.exists()) {
+            throw new GitletException("A remote with that name already exists.");
+        }
+        REMOTES_DIR.mkdir();
+        writeContents(remoteFile, new File(remoteDir).getAbsolutePath());
+    }
+
+    /** Copies the commits and blobs of branch BRANCH of remote NAME that this
+     *  repository lacks, and points branch NAME/BRANCH at its head. */
+    public void fetch(String name, String branch) {
+        Repository remote = openRemote(name);
+        Commit remoteTip = remote.getAllBranches().get(branch);
+        if (remoteTip == null) {
+            throw new GitletException("That remote does not have that branch.");
+        }
+        commits = getAllCommits();
+        remote.commits = remote.getAllCommits();
+        List<Commit> missing = missingCommits(remote.commits, remoteTip.getCommitId(), commits.keySet());
+        transfer(missing, remote, this);
+
+        branches = getAllBranches();
+        branches.put(name + "/" + branch, remoteTip);
+        saveBranchesHashMap();
+    }
+
+    /** Copies the commits and blobs of the head that remote NAME lacks, and
+     *  fast-forwards its branch BRANCH to the head.  As in the Gitlet spec,
+     *  a remote whose current branch is BRANCH has its head moved too, but
+     *  its working files are left as they were. */
+    @SuppressWarnings("try")
+    public void push(String name, String branch) {
+        Repository remote = openRemote(name);
+        // this repository's lock is already held, so waiting without limit
+        // would deadlock against a push from the remote to here
+        RepositoryLock remoteLock = RepositoryLock.tryAcquire(remote.COMMON_DIR, REMOTE_LOCK_MILLIS);
+        if (remoteLock == null) {
+            throw new GitletException("Remote repository is busy.");
+        }
+        try (remoteLock) {
+            push(remote, branch);
+        }
+    }
+
+    /** How long push waits for the remote's writer lock. */
+    private static final long REMOTE_LOCK_MILLIS = 5000;
+
+    /** Does the work of push, holding REMOTE's writer lock. */
+    private void push(Repository remote, String branch) {
+        commits = getAllCommits();
+        String headId = readContentsAsString(HEAD);
+        HashMap<String, Commit> remoteBranches = remote.getAllBranches();
+        Commit remoteTip = remoteBranches.get(branch);
+        if (remoteTip != null
+                && !reachability().isAncestor(remoteTip.getCommitId(), headId, commits)) {
+            throw new GitletException("Please pull down remote changes before pushing.");
+        }
+        remote.commits = remote.getAllCommits();
+        List<Commit> missing = missingCommits(this, headId,
+                remoteTip == null ? null : remoteTip.getCommitId(), remote.commits.keySet());
+        saveReachability();
+        transfer(missing, this, remote);
+
+        remote.branches = remoteBranches;
+        remote.branches.put(branch, commits.get(headId));
+        remote.saveBranchesHashMap();
+        if (readContentsAsString(remote.CURRENT_BRANCH).equals(branch)) {
+            writeContents(join(remote.BRANCHES_DIR, branch), headId);
+            writeContents(remote.HEAD, headId);
+        }
+    }
+
+    /** The repository recorded as remote NAME. */
+    private Repository openRemote(String name) {
+        File remoteFile = join(REMOTES_DIR, name);
+        File remoteGitlet = remoteFile.isFile() ? new File(readContentsAsString(remoteFile)) : null;
+        if (remoteGitlet == null || !join(commonDir(remoteGitlet), "commits").isFile()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        return new Repository(remoteGitlet.getParentFile());
+    }
+
+    /** The commits of ALLCOMMITS reachable from TIP without passing through
+     *  one in HAVE.  The side that has a commit has all its ancestors, so the
+     *  walk stops at the first commit the other side already has, and only
+     *  the new history is visited.  Used by fetch, where the bitmaps are the
+     *  remote's and building them would cost a walk of its whole history. */
+    private static List<Commit> missingCommits(HashMap<String, Commit> allCommits,
+                                               String tip, Set<String> have) {
+        List<Commit> missing = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.push(tip);
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.pop();
+            Commit commit = allCommits.get(id);
+            if (commit == null || have.contains(id) || !seen.add(id)) {
+                continue;
+            }
+            missing.add(commit);
+            if (commit.getParent() != null) {
+                toVisit.push(commit.getParent());
+            }
+            if (commit.getMergeParent() != null) {
+                toVisit.push(commit.getMergeParent());
+            }
+        }
+        return missing;
+    }
+
+    /** The commits of FROM reachable from TIP but not from THEIRTIP (if not
+     *  null) and not in HAVE, found with FROM's reachability bitmaps.  FROM
+     *  must have loaded its commits. */
+    private static List<Commit> missingCommits(Repository from, String tip, String theirTip,
+                                               Set<String> have) {
+        ReachabilityIndex index = from.reachability();
+        BitSet toSend = index.reachable(tip, from.commits);
+        if (theirTip != null) {
+            toSend.andNot(index.reachable(theirTip, from.commits));
+        }
+        List<Commit> missing = new ArrayList<>();
+        for (int i = toSend.nextSetBit(0); i >= 0; i = toSend.nextSetBit(i + 1)) {
+            Commit commit = from.commits.get(index.id(i));
+            if (commit != null && !have.contains(commit.getCommitId())) {
+                missing.add(commit);
+            }
+        }
+        return missing;
+    }
+
+    /** Sends COMMITS and the blobs they track that TO does not have from FROM
+     *  to TO as one pack, then adds the commits to TO's commits, which TO
+     *  must have loaded.  Objects are in place before any commit names them. */
+    private static void transfer(List<Commit> commits, Repository from, Repository to) {
+        Set<String> objectIds = new LinkedHashSet<>();
+        for (Commit commit : commits) {
+            for (String blobId : commit.getBlobs().values()) {
+                if (!to.objectStore.contains(blobId)) {
+                    objectIds.add(blobId);
+                }
+            }
+        }
+        // a temporary file, so a failed transfer leaves nothing behind
+        File packFile = tempFileFor(join(to.COMMON_DIR, "incoming.pack")).toFile();
+        try {
+            Pack.write(packFile, commits, objectIds, from.objectStore);
+            for (Commit commit : Pack.read(packFile, to.objectStore)) {
+                to.commits.put(commit.getCommitId(), commit);
+            }
+        } finally {
+            try {
+                Files.deleteIfExists(packFile.toPath());
+            } catch (IOException excp) {
+                // left behind; the next transfer uses a fresh name
+            }
+        }
+        to.saveCommitsHashMap();
+    }
+
+    /** The reachability bitmaps of this repository, loaded once. */
+    private ReachabilityIndex reachability() {
+        if (reachabilityIndex == null) {
+            reachabilityIndex = ReachabilityIndex.load(BITMAPS);
+        }
+        return reachabilityIndex;
+    }
+
+    /** Saves any bitmaps added since they were loaded.  A shallow clone's
+     *  bitmaps would leave out the history it lacks, so it keeps none. */
+    private void saveReachability() {
+        if (reachabilityIndex != null && !SHALLOW.exists()) {
+            reachabilityIndex.save(BITMAPS);
+        }
+    }
+
+    /** Prints to OUT how the working files differ from the staging area.
+     *  Files outside the sparse set are left out, as they are not checked out. */
+    public void diff(PrintStream out) {
+        stagingArea = loadStagingArea();
+        commits = getAllCommits();
+        WorkingTree tree = new WorkingTree(CWD, GITLET_DIR);
+        Map<String, String> index = inSparseSet(tree, indexBlobs());
+        printDiff(out, index, workingBlobs(tree, index.keySet()), true);
+    }
+
+    /** Prints to OUT how the staging area differs from the head commit. */
+    public void diffStaged(PrintStream out) {
+        stagingArea = loadStagingArea();
+        commits = getAllCommits();
+        printDiff(out, getHead().getBlobs(), indexBlobs(), false);
+    }
+
+    /** Prints to OUT how the working files differ from commit REF, leaving
+     *  out files outside the sparse set. */
+    public void diff(PrintStream out, String ref) {
+        stagingArea = loadStagingArea();
+        commits = getAllCommits();
+        WorkingTree tree = new WorkingTree(CWD, GITLET_DIR);
+        Map<String, String> commitBlobs = inSparseSet(tree, findCommit(ref).getBlobs());
+        Set<String> names = new HashSet<>(commitBlobs.keySet());
+        names.addAll(inSparseSet(tree, indexBlobs()).keySet());
+        printDiff(out, commitBlobs, workingBlobs(tree, names), true);
+    }
+
+    /** Prints to OUT how commit NEWREF differs from commit OLDREF. */
+    public void diff(PrintStream out, String oldRef, String newRef) {
+        commits = getAllCommits();
+        printDiff(out, findCommit(oldRef).getBlobs(), findCommit(newRef).getBlobs(), false);
+    }
+
+    /** Writes the files of commit REF to OUT as a FORMAT archive, "tar" or
+     *  "zip", reading blobs on THREADS threads; see Archive. */
+    public void archive(OutputStream out, String ref, String format, int threads) {
+        if (!format.equals(Archive.TAR) && !format.equals(Archive.ZIP)) {
+            throw new GitletException("Unknown archive format.");
+        }
+        commits = getAllCommits();
+        new Archive(objectStore, threads).write(findCommit(ref), format, out);
+    }
+
+    /** The commit named by REF: a branch, or a commit id or unique prefix of one. */
+    private Commit findCommit(String ref) {
+        branches = getAllBranches();
+        if (branches.containsKey(ref)) {
+            return commits.get(branches.get(ref).getCommitId());
+        }
+        return findCommitById(ref);
+    }
+
+    /** The commit whose id is ID or starts with it, which must name a
+     *  single commit. */
+    private Commit findCommitById(String id) {
+        if (commits.containsKey(id)) {
+            return commits.get(id);
+        }
+        List<Commit> found = new ArrayList<>();
+        for (Map.Entry<String, Commit> entry : commits.entrySet()) {
+            if (!id.isEmpty() && entry.getKey().startsWith(id)) {
+                found.add(entry.getValue());
+            }
+        }
+        if (found.isEmpty()) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        if (found.size() > 1) {
+            throw new GitletException("Ambiguous commit id.");
+        }
+        return found.get(0);
+    }
+
+    /** The files the next commit would track, as file name to blob id. */
+    private Map<String, String> indexBlobs() {
+        Map<String, String> index = new HashMap<>(getHead().getBlobs());
+        index.putAll(stagingArea.getFilesToAdd());
+        for (String fileName : stagingArea.getFilesToRemove()) {
+            index.remove(fileName);
+        }
+        return index;
+    }
+
+    /** The entries of BLOBS, file name to blob id, for files in the sparse
+     *  set of TREE. */
+    private static Map<String, String> inSparseSet(WorkingTree tree, Map<String, String> blobs) {
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, String> entry : blobs.entrySet()) {
+            if (tree.inSparseSet(entry.getKey())) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** The blob ids the files of TREE among NAMES would have, hashed in parallel. */
+    private Map<String, String> workingBlobs(WorkingTree tree, Set<String> names) {
+        List<File> files = new ArrayList<>();
+        for (String name : names) {
+            if (tree.contains(name)) {
+                files.add(join(CWD, name));
+            }
+        }
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<File, String> entry : Hashing.hashFiles(objectFormat(), files).entrySet()) {
+            result.put(entry.getKey().getName(), entry.getValue());
+        }
+        return result;
+    }
+
+    /** Prints to OUT a unified diff of every file whose blob id differs between
+     *  OLDBLOBS and NEWBLOBS, in name order, showing renamed and copied files
+     *  as such.  Files with equal ids are never read.  The new contents are
+     *  read from the working directory if NEWISWORKINGTREE, and from the
+     *  object store otherwise. */
+    private void printDiff(PrintStream out, Map<String, String> oldBlobs, Map<String, String> newBlobs,
+                           boolean newIsWorkingTree) {
+        Function<String, String> oldContents = name -> loadBlob(oldBlobs.get(name)).getContentsAsString();
+        Function<String, String> newContents = name -> newIsWorkingTree
+                ? readContentsAsString(join(CWD, name)) : loadBlob(newBlobs.get(name)).getContentsAsString();
+        Map<String, RenameDetector.Rename> renames = new HashMap<>();
+        Set<String> renamedAway = new HashSet<>();
+        for (RenameDetector.Rename rename
+                : RenameDetector.detect(oldBlobs, newBlobs, oldContents, newContents, true)) {
+            renames.put(rename.getTo(), rename);
+            if (!rename.isCopy()) {
+                renamedAway.add(rename.getFrom());
+            }
+        }
+
+        TreeSet<String> names = new TreeSet<>(oldBlobs.keySet());
+        names.addAll(newBlobs.keySet());
+        for (String name : names) {
+            String oldId = oldBlobs.get(name);
+            String newId = newBlobs.get(name);
+            RenameDetector.Rename rename = renames.get(name);
+            if (Objects.equals(oldId, newId) || (newId == null && renamedAway.contains(name))) {
+                continue;
+            }
+            if (rename != null) {
+                String kind = rename.isCopy() ? "copy" : "rename";
+                Diff.print(out, rename.getFrom(), oldContents.apply(rename.getFrom()),
+                        name, newContents.apply(name),
+                        "similarity index " + rename.getSimilarity() + "%\n"
+                        + kind + " from " + rename.getFrom() + "\n" + kind + " to " + name);
+                continue;
+            }
+            Diff.print(out, oldId == null ? null : name,
+                    oldId == null ? null : oldContents.apply(name),
+                    newId == null ? null : name, newId == null ? null : newContents.apply(name));
+        }
+    }
+
+    /** Moves objects left directly in .gitlet/ by older versions into .gitlet/objects,
+     *  returning how many */
+    public int migrateObjects() {
+        return objectStore.migrate();
+    }
+
     /** Restores all the files tracked by the given commit. */
     public void reset(String commitId) {
         // Load necessary data
         commits = getAllCommits();
         branches = getAllBranches();
         stagingArea = loadStagingArea();
-        blobs = loadBlobsHashMap();
 
         // Check if the commit exists
         if (!commits.containsKey(commitId)) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+            throw new GitletException("No commit with that id exists.");
         }
 
         Commit resetCommit = commits.get(commitId);
 
-        // Check for untracked files in the way
-        for (String fileName : plainFilenamesIn(CWD)) {
-            if (!getHead().getBlobs().containsKey(fileName) && resetCommit.getBlobs().containsKey(fileName)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                System.exit(0);
+        // Check for untracked files in the way, listing the directory once;
+        // files outside the sparse set are left alone
+        WorkingTree workingTree = new WorkingTree(CWD, GITLET_DIR);
+        Set<String> cwdFiles = workingTree.files();
+        Map<String, String> headBlobs = getHead().getBlobs();
+        for (String fileName : cwdFiles) {
+            if (!headBlobs.containsKey(fileName) && resetCommit.getBlobs().containsKey(fileName)) {
+                throw new GitletException(
+                        "There is an untracked file in the way; delete it, or add and commit it first.");
             }
         }
 
-        // Remove all files from the working directory
-        for (String fileName : plainFilenamesIn(CWD)) {
-            restrictedDelete(fileName);
+        // Remove files the reset commit does not track; the rest are overwritten below
+        for (String fileName : cwdFiles) {
+            if (!resetCommit.getBlobs().containsKey(fileName)) {
+                restrictedDelete(join(CWD, fileName));
+            }
         }
 
         // Restore files from the reset commit
         for (String fileName : resetCommit.getBlobs().keySet()) {
-            String blobId = resetCommit.getBlobs().get(fileName);
-            Blob blob = readObject(join(GITLET_DIR, blobId), Blob.class);
-            writeContents(join(CWD, fileName), blob.getContentsAsString());
+            if (workingTree.inSparseSet(fileName)) {
+                objectStore.restore(resetCommit.getBlobs().get(fileName), join(CWD, fileName));
+            }
         }
 
         // Update the current branch's head to the reset commit
@@ -593,25 +1415,28 @@ public class Repository implements Serializable {
         saveBranchesHashMap();
         saveStagingArea();
     }
-    /** Get most recent commit (head) */
-    public Commit getHead() {
-        String currentBranchHash = readContentsAsString(HEAD);
-        return getAllCommits().get(currentBranchHash);
+    /** The hash used for object ids in this repository, "sha1" or "sha256" */
+    public String objectFormat() {
+        return config("objectFormat", Hashing.SHA1);
     }
 
-    /** blobs HashMap Methods for persistence */
-    public HashMap<String, String> loadBlobsHashMap() {
-        if (!BLOBS_FILE.exists()) {
-            // Create an empty HashMap and save it to BLOBS_FILE
-            HashMap<String, String> emptyMap = new HashMap<>();
-            Utils.writeObject(BLOBS_FILE, emptyMap);
-        } //got rid of else because of return error
-        return Utils.readObject(BLOBS_FILE, HashMap.class);
-
+    /** The value of KEY in the config file, or DEFAULTVALUE if it is not set */
+    private String config(String key, String defaultValue) {
+        if (!CONFIG.exists()) {
+            return defaultValue;
+        }
+        for (String line : readContentsAsString(CONFIG).split("\n")) {
+            if (line.startsWith(key + "=")) {
+                return line.substring(key.length() + 1).trim();
+            }
+        }
+        return defaultValue;
     }
 
-    public void saveBlobsHashMap() {
-        Utils.writeObject(BLOBS_FILE, blobs);
+    /** Get most recent commit (head) */
+    public Commit getHead() {
+        String currentBranchHash = readContentsAsString(HEAD);
+        return getAllCommits().get(currentBranchHash);
     }
 
     /** branches HashMap methods for persistence */
@@ -624,13 +1449,59 @@ public class Repository implements Serializable {
     }
 
     /** commits HashMap Methods for persistence */
-    //gets all commits ever made
+    //gets all commits ever made; callers get their own copy of the cached map
     public HashMap<String, Commit> getAllCommits() {
-        return Utils.readObject(COMMITS_FILE, HashMap.class);
+        String key = commitsCacheKey();
+        HashMap<String, Commit> cached = commitMap(cache.get(key, HashMap.class));
+        if (cached == null) {
+            cached = commitMap(Utils.readObject(COMMITS_FILE, HashMap.class));
+            cacheCommits(key, cached);
+        }
+        return new HashMap<>(cached);
+    }
+
+    /** MAP, a commits map read back from the commits file or the cache. */
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, Commit> commitMap(HashMap<?, ?> map) {
+        return (HashMap<String, Commit>) map;
     }
 
     public void saveCommitsHashMap() {
         Utils.writeObject(COMMITS_FILE, commits);
+        String key = commitsCacheKey();
+        cacheCommits(key, new HashMap<>(commits));
+        updateCommitGraph(key);
+    }
+
+    /** Brings a saved commit graph up to date with the commits just saved
+     *  with cache key KEY, so that only the new commits get filters and the
+     *  next path-limited log need not read the commits file.  Repositories
+     *  without a graph get one from commitGraph() when first needed. */
+    private void updateCommitGraph(String key) {
+        if (!COMMIT_GRAPH.isFile()) {
+            return;
+        }
+        CommitGraph graph = CommitGraph.load(COMMIT_GRAPH);
+        graph.update(commits, key);
+        graph.save(COMMIT_GRAPH);
+    }
+
+    /** The commits file is rewritten in place, so its cache key includes its
+     *  size and modification time so that writes by other processes are noticed. */
+    private String commitsCacheKey() {
+        return "commits@" + COMMITS_FILE.lastModified() + ":" + COMMITS_FILE.length();
+    }
+
+    private void cacheCommits(String key, HashMap<String, Commit> allCommits) {
+        if (commitsKey != null) {
+            cache.invalidate(commitsKey);
+        }
+        commitsKey = key;
+        long weight = 0;
+        for (Commit commit : allCommits.values()) {
+            weight += ObjectCache.weigh(commit);
+        }
+        cache.put(key, allCommits, weight);
     }
 
     /** Staging Area Methods for persistence */
@@ -0,0 +1,140 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** The writer lock of a repository, held by every command that changes it.
+ *  It is an exclusive FileChannel lock on .gitlet/lock, so writers in
+ *  different processes take turns.  File locks belong to the whole
+ *  process, so threads of one process take turns on a ReentrantLock per
+ *  repository first.
+ *  Readers take no lock and never wait.  Every file is replaced by renaming
+ *  a complete new version over it (see Utils.writeContents), objects never
+ *  change once written, and writers save a commit before anything points
+ *  at it, so a reader always sees a consistent, if possibly slightly old,
+ *  snapshot.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class RepositoryLock implements AutoCloseable {
+
+    /** The in-process lock of each repository, by canonical .gitlet path. */
+    private static final ConcurrentHashMap<String, ReentrantLock> LOCAL_LOCKS =
+            new ConcurrentHashMap<>();
+    /** How often tryAcquire checks whether another process let go. */
+    private static final long POLL_MILLIS = 10;
+
+    private final ReentrantLock local;
+    /** The file lock, or null if this thread already held the repository. */
+    private final FileLock fileLock;
+    private final FileChannel channel;
+
+    private RepositoryLock(ReentrantLock local, FileChannel channel, FileLock fileLock) {
+        this.local = local;
+        this.channel = channel;
+        this.fileLock = fileLock;
+    }
+
+    /** Waits for and returns the writer lock of the repository in GITLETDIR. */
+    static RepositoryLock acquire(File gitletDir) {
+        ReentrantLock local = localLock(gitletDir);
+        local.lock();
+        if (local.getHoldCount() > 1) {
+            return new RepositoryLock(local, null, null);
+        }
+        try {
+            FileChannel channel = FileChannel.open(Utils.join(gitletDir, "lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            return new RepositoryLock(local, channel, channel.lock());
+        } catch (IOException | RuntimeException excp) {
+            local.unlock();
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the writer lock of the repository in GITLETDIR, or null if
+     *  it is still held by another writer after WAITMILLIS.  For taking a
+     *  second repository's lock while holding one's own: two writers each
+     *  waiting for the other's repository would otherwise wait forever. */
+    static RepositoryLock tryAcquire(File gitletDir, long waitMillis) {
+        ReentrantLock local = localLock(gitletDir);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        try {
+            if (!local.tryLock(waitMillis, TimeUnit.MILLISECONDS)) {
+                return null;
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (local.getHoldCount() > 1) {
+            return new RepositoryLock(local, null, null);
+        }
+        FileChannel channel = null;
+        FileLock fileLock = null;
+        try {
+            channel = FileChannel.open(Utils.join(gitletDir, "lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            fileLock = channel.tryLock();
+            while (fileLock == null && System.nanoTime() < deadline) {
+                Thread.sleep(POLL_MILLIS);
+                fileLock = channel.tryLock();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException excp) {
+            giveUp(local, channel);
+            throw new IllegalArgumentException(excp);
+        }
+        if (fileLock == null) {
+            giveUp(local, channel);
+            return null;
+        }
+        return new RepositoryLock(local, channel, fileLock);
+    }
+
+    /** Lets go of LOCAL and closes CHANNEL, if not null, after a failed
+     *  tryAcquire. */
+    private static void giveUp(ReentrantLock local, FileChannel channel) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException excp) {
+            // nothing was locked through it
+        } finally {
+            local.unlock();
+        }
+    }
+
+    /** The in-process lock of the repository in GITLETDIR. */
+    private static ReentrantLock localLock(File gitletDir) {
+        String key;
+        try {
+            key = gitletDir.getCanonicalPath();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return LOCAL_LOCKS.computeIfAbsent(key, k -> new ReentrantLock());
+    }
+
+    /** Releases the lock. */
+    @Override
+    public void close() {
+        try {
+            if (fileLock != null) {
+                fileLock.release();
+                channel.close();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            local.unlock();
+        }
+    }
+}
@@ -9,6 +9,10 @@ import java.util.List;
 
 public class StagingArea implements Serializable {
 
+    /** Pinned to the value Java derived for the original class, so that
+     *  repositories written before it was declared can still be read. */
+    private static final long serialVersionUID = -1299485384284037252L;
+
     /** filesToAdd is a Hashmap with key = fileName, value = blob's sha1 id */
     private HashMap<String, String> filesToAdd;
     /** filesToRemove is an ArrayList with key = fileName */
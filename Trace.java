@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Per-command tracing of the I/O and hashing done through Utils.
+ *  Tracing is off unless Main is given --trace or the GITLET_TRACE
+ *  environment variable is set; while it is off, the hooks called from
+ *  Utils only bump counters.  When a traced command finishes, a summary is
+ *  printed on System.err, a JSON line is appended to the file named by
+ *  GITLET_TRACE_FILE (if set), and a gitlet.Command event is emitted for
+ *  any running Java Flight Recorder recording.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class Trace {
+
+    /** True iff timings should be taken and reported. */
+    private static boolean enabled = System.getenv("GITLET_TRACE") != null;
+    /** File that JSON events are appended to, or null. */
+    private static String eventFile = System.getenv("GITLET_TRACE_FILE");
+
+    /** The command being traced, or null between commands. */
+    private static String command;
+    private static long commandStart;
+
+    /* Counters, which the hooks bump from any thread. */
+    private static final LongAdder filesRead = new LongAdder();
+    private static final LongAdder bytesRead = new LongAdder();
+    private static final LongAdder readNanos = new LongAdder();
+    private static final LongAdder filesWritten = new LongAdder();
+    private static final LongAdder bytesWritten = new LongAdder();
+    private static final LongAdder writeNanos = new LongAdder();
+    private static final LongAdder objectsRead = new LongAdder();
+    private static final LongAdder deserializeNanos = new LongAdder();
+    private static final LongAdder hashes = new LongAdder();
+    private static final LongAdder bytesHashed = new LongAdder();
+    private static final LongAdder hashNanos = new LongAdder();
+    private static final LongAdder listings = new LongAdder();
+    private static final LongAdder entriesListed = new LongAdder();
+    private static final LongAdder listNanos = new LongAdder();
+    private static final LongAdder fsyncs = new LongAdder();
+
+    /** Flight Recorder event carrying the same numbers as the JSON line. */
+    @Name("gitlet.Command")
+    @Label("Gitlet Command")
+    @Category("Gitlet")
+    static class CommandEvent extends Event {
+        @Label("Command")
+        String command;
+        @Label("Bytes Read")
+        long bytesRead;
+        @Label("Bytes Written")
+        long bytesWritten;
+        @Label("Objects Deserialized")
+        long objectsRead;
+        @Label("Bytes Hashed")
+        long bytesHashed;
+        @Label("Directory Listings")
+        long listings;
+        @Label("Fsyncs")
+        long fsyncs;
+    }
+
+    private static CommandEvent event;
+    private static boolean hookInstalled;
+
+    /** Turns tracing on for the rest of this process. */
+    static void enable() {
+        enabled = true;
+    }
+
+    /** Returns a start time to pass to one of the hooks below, or 0 if
+     *  tracing is off. */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** Returns the nanoseconds since START, or 0 if tracing is off. */
+    private static long since(long start) {
+        return enabled ? System.nanoTime() - start : 0;
+    }
+
+    /* HOOKS, CALLED FROM UTILS */
+
+    static void read(long start, long bytes) {
+        filesRead.increment();
+        bytesRead.add(bytes);
+        readNanos.add(since(start));
+    }
+
+    static void write(long start, long bytes) {
+        filesWritten.increment();
+        bytesWritten.add(bytes);
+        writeNanos.add(since(start));
+    }
+
+    static void deserialize(long start, long bytes) {
+        objectsRead.increment();
+        bytesRead.add(bytes);
+        deserializeNanos.add(since(start));
+    }
+
+    static void hash(long start, long bytes) {
+        hashes.increment();
+        bytesHashed.add(bytes);
+        hashNanos.add(since(start));
+    }
+
+    static void list(long start, long entries) {
+        listings.increment();
+        entriesListed.add(entries);
+        listNanos.add(since(start));
+    }
+
+    static void fsync() {
+        fsyncs.increment();
+    }
+
+    /* COMMANDS */
+
+    /** Starts tracing command NAME, resetting all counters. */
+    static void begin(String name) {
+        command = name;
+        for (LongAdder counter : List.of(filesRead, bytesRead, readNanos, filesWritten,
+                bytesWritten, writeNanos, objectsRead, deserializeNanos, hashes, bytesHashed,
+                hashNanos, listings, entriesListed, listNanos, fsyncs)) {
+            counter.reset();
+        }
+        if (!enabled) {
+            return;
+        }
+        event = new CommandEvent();
+        event.begin();
+        commandStart = System.nanoTime();
+        if (!hookInstalled) {
+            // commands that fail call System.exit, so report from a hook too
+            Runtime.getRuntime().addShutdownHook(new Thread(Trace::end));
+            hookInstalled = true;
+        }
+    }
+
+    /** Finishes the current command and reports it, if tracing is on. */
+    static synchronized void end() {
+        if (!enabled || command == null) {
+            return;
+        }
+        long wallNanos = System.nanoTime() - commandStart;
+        System.err.printf("trace: %s %.3f ms%n", command, wallNanos / 1e6);
+        System.err.printf("  read         %8d files   %12d bytes %10.3f ms%n",
+                filesRead.sum(), bytesRead.sum(), readNanos.sum() / 1e6);
+        System.err.printf("  deserialize  %8d objects %25.3f ms%n",
+                objectsRead.sum(), deserializeNanos.sum() / 1e6);
+        System.err.printf("  write        %8d files   %12d bytes %10.3f ms%n",
+                filesWritten.sum(), bytesWritten.sum(), writeNanos.sum() / 1e6);
+        System.err.printf("  hash         %8d calls   %12d bytes %10.3f ms%n",
+                hashes.sum(), bytesHashed.sum(), hashNanos.sum() / 1e6);
+        System.err.printf("  list         %8d dirs    %12d names %10.3f ms%n",
+                listings.sum(), entriesListed.sum(), listNanos.sum() / 1e6);
+        System.err.printf("  fsync        %8d%n", fsyncs.sum());
+
+        event.command = command;
+        event.bytesRead = bytesRead.sum();
+        event.bytesWritten = bytesWritten.sum();
+        event.objectsRead = objectsRead.sum();
+        event.bytesHashed = bytesHashed.sum();
+        event.listings = listings.sum();
+        event.fsyncs = fsyncs.sum();
+        event.commit();
+
+        if (eventFile != null) {
+            appendEvent(wallNanos);
+        }
+        command = null;
+    }
+
+    /** Appends the current command as one JSON object to the event file. */
+    private static void appendEvent(long wallNanos) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(new File(eventFile), true))) {
+            out.printf("{\"command\":%s,\"timestamp\":%d,\"wallNanos\":%d,"
+                    + "\"filesRead\":%d,\"bytesRead\":%d,\"readNanos\":%d,"
+                    + "\"objectsDeserialized\":%d,\"deserializeNanos\":%d,"
+                    + "\"filesWritten\":%d,\"bytesWritten\":%d,\"writeNanos\":%d,"
+                    + "\"hashes\":%d,\"bytesHashed\":%d,\"hashNanos\":%d,"
+                    + "\"listings\":%d,\"entriesListed\":%d,\"listNanos\":%d,"
+                    + "\"fsyncs\":%d}%n",
+                    json(command), System.currentTimeMillis(), wallNanos,
+                    filesRead.sum(), bytesRead.sum(), readNanos.sum(),
+                    objectsRead.sum(), deserializeNanos.sum(),
+                    filesWritten.sum(), bytesWritten.sum(), writeNanos.sum(),
+                    hashes.sum(), bytesHashed.sum(), hashNanos.sum(),
+                    listings.sum(), entriesListed.sum(), listNanos.sum(),
+                    fsyncs.sum());
+        } catch (IOException excp) {
+            System.err.println("trace: cannot write " + eventFile + ": " + excp.getMessage());
+        }
+    }
+
+    /** S as a JSON string literal. */
+    private static String json(String s) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
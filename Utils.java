@@ -8,15 +8,17 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -32,30 +34,17 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** True iff written files are forced to disk before being renamed into
+     *  place: set by the gitlet.fsync property or GITLET_FSYNC variable. */
+    static final boolean FSYNC = System.getProperty("gitlet.fsync") != null
+            || System.getenv("GITLET_FSYNC") != null;
+
     /* SHA-1 HASH VALUES. */
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
-        }
+        return Hashing.hash(Hashing.SHA1, vals);
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -99,7 +88,10 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            long start = Trace.start();
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.read(start, contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp);
         }
@@ -114,38 +106,77 @@ class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  either a String or a byte array.  The bytes go to a temporary file
+     *  beside FILE that is then renamed over it, so that a concurrent reader
+     *  sees the old contents or the new but never a mix.  Throws
+     *  IllegalArgumentException in case of problems. */
     static void writeContents(File file, Object... contents) { // contents in book
         try {
             if (file.isDirectory()) {
                 throw
                         new IllegalArgumentException("cannot overwrite directory");
             }
-            BufferedOutputStream str =
-                    new BufferedOutputStream(Files.newOutputStream(file.toPath()));
-            for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+            long start = Trace.start();
+            long length = 0;
+            Path temp = tempFileFor(file);
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+                    OutputStream str = new BufferedOutputStream(Channels.newOutputStream(channel));
+                    for (Object obj : contents) {
+                        byte[] bytes;
+                        if (obj instanceof byte[]) {
+                            bytes = (byte[]) obj;
+                        } else {
+                            bytes = ((String) obj).getBytes(StandardCharsets.UTF_8);
+                        }
+                        str.write(bytes);
+                        length += bytes.length;
+                    }
+                    str.flush();
+                    force(channel);
                 }
+                replace(temp, file);
+            } finally {
+                Files.deleteIfExists(temp);
             }
-            str.close();
+            Trace.write(start, length);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp);
         }
     }
 
+    /** A fresh name for a temporary file beside FILE, unique to this thread. */
+    static Path tempFileFor(File file) {
+        return file.toPath().resolveSibling("." + file.getName() + "."
+                + ProcessHandle.current().pid() + "." + Thread.currentThread().getId() + ".tmp");
+    }
+
+    /** Forces what was written through CHANNEL to disk, if FSYNC. */
+    static void force(FileChannel channel) throws IOException {
+        if (FSYNC) {
+            channel.force(true);
+            Trace.fsync();
+        }
+    }
+
+    /** Renames TEMP over FILE in one step. */
+    static void replace(Path temp, File file) throws IOException {
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
         try {
+            long start = Trace.start();
             ObjectInputStream in =
                     new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.deserialize(start, file.length());
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -173,11 +204,13 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        long start = Trace.start();
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
         } else {
             Arrays.sort(files);
+            Trace.list(start, files.length);
             return Arrays.asList(files);
         }
     }
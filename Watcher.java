@@ -0,0 +1,273 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** The file system watcher run by the watch command.  While it runs it
+ *  keeps a journal in .gitlet/watch of the working files that were
+ *  created, changed or deleted, each with the sequence number of its last
+ *  change.  A command that saved the journal's mark along with what it
+ *  learned about the working directory then only needs to look at the
+ *  files changed since that mark, instead of listing or hashing them all.
+ *  When the watcher loses events (an overflow) it starts a new epoch,
+ *  which no saved mark belongs to, so everyone falls back to a full scan
+ *  once.  A journal left behind by a watcher that is no longer running is
+ *  ignored.
+ *  The journal is written a few milliseconds after the events it records,
+ *  so a command that must not miss a change it was just preceded by calls
+ *  sync, which, as git's fsmonitor does, creates a cookie file in .gitlet
+ *  and waits for the watcher to record it.  Events arrive in order, so by
+ *  then every earlier change is in the journal too.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class Watcher {
+
+    /** Name of the journal file in .gitlet. */
+    static final String JOURNAL = "watch";
+
+    /** Events arriving this close together are written in one go... */
+    private static final long BATCH_MILLIS = 10;
+    /** ...but a steady stream of them is written at least this often. */
+    private static final long MAX_BATCH_MILLIS = 100;
+
+    /** Names of sync's cookie files in .gitlet start with this. */
+    private static final String COOKIE_PREFIX = "watch-cookie-";
+    /** How long sync waits for the watcher before giving up on it. */
+    private static final long SYNC_MILLIS = 1000;
+    private static final long SYNC_POLL_MILLIS = 2;
+    /** Cookies created by this process, to keep their names apart. */
+    private static final AtomicLong COOKIES = new AtomicLong();
+
+    /** A position in the journal of one watcher run. */
+    static class Mark implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long epoch;
+        private final long seq;
+
+        Mark(long epoch, long seq) {
+            this.epoch = epoch;
+            this.seq = seq;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Mark && ((Mark) other).epoch == epoch
+                    && ((Mark) other).seq == seq;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(epoch) * 31 + Long.hashCode(seq);
+        }
+    }
+
+    /** The journal of a running watcher. */
+    static class Journal implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** The watcher's process id and start time, to tell whether it still runs. */
+        private long pid;
+        private long started;
+        /** Changes at or before this time, in milliseconds, are in the journal. */
+        private long writtenAt;
+        private long epoch;
+        private long seq;
+        /** key: file name, value: sequence number of its last change this epoch */
+        private HashMap<String, Long> changed = new HashMap<>();
+        /** The cookies of sync calls still waiting, or null in journals of
+         *  watchers that predate them. */
+        private HashSet<String> cookies = new HashSet<>();
+
+        /** The current position in this journal. */
+        Mark mark() {
+            return new Mark(epoch, seq);
+        }
+
+        /** The time of the latest change this journal is known to include. */
+        long getWrittenAt() {
+            return writtenAt;
+        }
+
+        /** Returns the names of the files changed after MARK, or null if
+         *  that is unknown because MARK is null or from another epoch. */
+        Set<String> changedSince(Mark mark) {
+            if (mark == null || mark.epoch != epoch) {
+                return null;
+            }
+            Set<String> result = new HashSet<>();
+            for (Map.Entry<String, Long> entry : changed.entrySet()) {
+                if (entry.getValue() > mark.seq) {
+                    result.add(entry.getKey());
+                }
+            }
+            return result;
+        }
+    }
+
+    /** Returns the journal of the watcher running on the repository in
+     *  GITLETDIR, or null if there is none. */
+    static Journal load(File gitletDir) {
+        File file = Utils.join(gitletDir, JOURNAL);
+        if (!file.isFile()) {
+            return null;
+        }
+        Journal journal;
+        try {
+            journal = Utils.readObject(file, Journal.class);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+        boolean running = ProcessHandle.of(journal.pid)
+                .filter(process -> startTime(process) == journal.started).isPresent();
+        return running ? journal : null;
+    }
+
+    /** Returns the journal of the watcher running on the repository in
+     *  GITLETDIR once it records every change made before this call, or null
+     *  if there is no watcher or it does not catch up within SYNC_MILLIS. */
+    static Journal sync(File gitletDir) {
+        Journal journal = load(gitletDir);
+        if (journal == null) {
+            return null;
+        }
+        File cookie = Utils.join(gitletDir, COOKIE_PREFIX + ProcessHandle.current().pid()
+                + "-" + COOKIES.incrementAndGet());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SYNC_MILLIS);
+        try {
+            Files.createFile(cookie.toPath());
+            while (journal.cookies == null || !journal.cookies.contains(cookie.getName())) {
+                if (System.nanoTime() > deadline) {
+                    return null;
+                }
+                Thread.sleep(SYNC_POLL_MILLIS);
+                journal = load(gitletDir);
+                if (journal == null) {
+                    return null;
+                }
+            }
+            return journal;
+        } catch (IOException excp) {
+            return null;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    /** Watches the working directory CWD of the repository in GITLETDIR,
+     *  keeping its journal up to date until the process is stopped or CWD
+     *  goes away.  The working tree is a single directory, so only CWD
+     *  itself is registered, along with GITLETDIR for sync's cookies.  A
+     *  cookie is only acknowledged once no events are left waiting, so that
+     *  events from before it cannot still be on their way. */
+    static void run(File cwd, File gitletDir) {
+        File file = Utils.join(gitletDir, JOURNAL);
+        Journal journal = new Journal();
+        ProcessHandle self = ProcessHandle.current();
+        journal.pid = self.pid();
+        journal.started = startTime(self);
+        journal.epoch = System.nanoTime();
+        Path dir = cwd.toPath();
+        try (WatchService service = dir.getFileSystem().newWatchService()) {
+            dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            gitletDir.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            journal.writtenAt = System.currentTimeMillis();
+            Utils.writeObject(file, journal);
+            Runtime.getRuntime().addShutdownHook(new Thread(file::delete));
+            Set<String> pendingCookies = new HashSet<>();
+            while (true) {
+                WatchKey key = service.take();
+                long batchStart = System.currentTimeMillis();
+                boolean changed = false;
+                boolean quiet = false;
+                while (key != null) {
+                    boolean inWorkingTree = key.watchable().equals(dir);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (inWorkingTree || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            changed |= record(journal, event);
+                        } else {
+                            recordCookie(journal, event, pendingCookies);
+                        }
+                    }
+                    if (!key.reset()) {
+                        return;
+                    }
+                    if (System.currentTimeMillis() - batchStart < MAX_BATCH_MILLIS) {
+                        key = service.poll(BATCH_MILLIS, TimeUnit.MILLISECONDS);
+                        quiet = key == null;
+                    } else {
+                        key = null;
+                    }
+                }
+                if (quiet && !pendingCookies.isEmpty()) {
+                    journal.cookies.addAll(pendingCookies);
+                    pendingCookies.clear();
+                    changed = true;
+                }
+                // writing the journal causes events in .gitlet, which record nothing
+                if (changed) {
+                    journal.writtenAt = System.currentTimeMillis();
+                    Utils.writeObject(file, journal);
+                }
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Records EVENT in the working directory, returning true iff that
+     *  changed JOURNAL. */
+    private static boolean record(Journal journal, WatchEvent<?> event) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            journal.epoch = System.nanoTime();
+            journal.changed.clear();
+            return true;
+        }
+        String name = event.context().toString();
+        if (name.equals(".gitlet")) {
+            return false;
+        }
+        journal.seq += 1;
+        journal.changed.put(name, journal.seq);
+        return true;
+    }
+
+    /** Notes a cookie that EVENT in .gitlet created, in PENDING until it can
+     *  be acknowledged, or forgets one that it deleted. */
+    private static void recordCookie(Journal journal, WatchEvent<?> event, Set<String> pending) {
+        String name = event.context().toString();
+        if (!name.startsWith(COOKIE_PREFIX)) {
+            return;
+        }
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+            pending.add(name);
+        } else {
+            pending.remove(name);
+            journal.cookies.remove(name);
+        }
+    }
+
+    /** PROCESS's start time in milliseconds, or -1 where that is not known. */
+    private static long startTime(ProcessHandle process) {
+        return process.info().startInstant().map(Instant::toEpochMilli).orElse(-1L);
+    }
+}
@@ -0,0 +1,198 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/** A view of the plain files in the working directory, for one command.
+ *  The directory is listed at most once per command, into a hash set, and
+ *  names matching a pattern in .gitletignore (see IgnoreMatcher) are
+ *  dropped before they are even stat'ed.  The listing is
+ *  saved in .gitlet/cwdListing together with the directory's modification
+ *  time, so a later command finds it there instead of listing again as
+ *  long as no file has been created, deleted or renamed since.  While a
+ *  Watcher runs, the listing also records the watcher's mark, and a later
+ *  command only stats the files the watcher saw change since then.
+ *  With sparse checkout on, only the files matching a pattern in
+ *  .gitlet/sparse-checkout (same syntax as .gitletignore) are part of the
+ *  working tree: checkouts write only those, and listings leave the rest
+ *  out just like ignored names.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class WorkingTree {
+
+    /** Name of the file holding ignore patterns, one per line. */
+    static final String IGNORE_FILE = ".gitletignore";
+    /** Name of the file in .gitlet holding the sparse-checkout patterns. */
+    static final String SPARSE_FILE = "sparse-checkout";
+
+    /** A directory modified this close to when it was listed may have
+     *  changed again within the file system's timestamp granularity, so
+     *  such listings are not reused. */
+    private static final long RACY_MILLIS = 2000;
+
+    /** A saved listing of the working directory. */
+    private static class Listing implements Serializable {
+        private static final long serialVersionUID = 1326424392505320778L;
+        private long dirModified;
+        private long ignoreModified;
+        private long listedAt;
+        private HashSet<String> names;
+        /** The sparse-checkout patterns the listing was made with, or null. */
+        private String sparse;
+        /** The watcher journal position the listing is up to date with, or null. */
+        private Watcher.Mark mark;
+    }
+
+    private final File cwd;
+    private final File gitletDir;
+    private final File listingFile;
+    private final File ignoreFile;
+    /** The sparse-checkout patterns as written, or null if sparse checkout is off. */
+    private final String sparseText;
+    /** Names in the sparse set, or null if sparse checkout is off. */
+    private final IgnoreMatcher sparse;
+    /** The files in the working directory, or null until first needed. */
+    private Set<String> files;
+
+    /** The working tree rooted at CWD, whose repository is GITLETDIR. */
+    WorkingTree(File cwd, File gitletDir) {
+        this.cwd = cwd;
+        this.gitletDir = gitletDir;
+        this.listingFile = Utils.join(gitletDir, "cwdListing");
+        this.ignoreFile = Utils.join(cwd, IGNORE_FILE);
+        File sparseFile = Utils.join(gitletDir, SPARSE_FILE);
+        this.sparseText = sparseFile.isFile() ? Utils.readContentsAsString(sparseFile) : null;
+        this.sparse = sparseText == null ? null
+                : new IgnoreMatcher(Arrays.asList(sparseText.split("\n")));
+    }
+
+    /** True iff FILENAME is in the sparse set, so that checkouts write it;
+     *  every name is while sparse checkout is off. */
+    boolean inSparseSet(String fileName) {
+        return sparse == null || sparse.matches(fileName, false);
+    }
+
+    /** The sparse-checkout patterns, or null if sparse checkout is off. */
+    List<String> sparsePatterns() {
+        return sparseText == null ? null : Arrays.asList(sparseText.split("\n"));
+    }
+
+    /** Writes PATTERNS as the sparse-checkout patterns of the repository in
+     *  GITLETDIR, or turns sparse checkout off if PATTERNS is null. */
+    static void writeSparsePatterns(File gitletDir, List<String> patterns) {
+        File sparseFile = Utils.join(gitletDir, SPARSE_FILE);
+        if (patterns == null) {
+            sparseFile.delete();
+        } else {
+            Utils.writeContents(sparseFile, String.join("\n", patterns));
+        }
+    }
+
+    /** True iff FILENAME is a plain file in the working directory.  Before
+     *  the directory has been listed this is a single stat. */
+    boolean contains(String fileName) {
+        if (files != null) {
+            return files.contains(fileName);
+        }
+        return Utils.join(cwd, fileName).isFile();
+    }
+
+    /** Returns the names of the plain, non-ignored files in the sparse set
+     *  in the working directory, listing it only if no usable listing is saved. */
+    Set<String> files() {
+        if (files == null) {
+            files = Collections.unmodifiableSet(load());
+        }
+        return files;
+    }
+
+    private HashSet<String> load() {
+        long dirModified = cwd.lastModified();
+        long ignoreModified = ignoreFile.lastModified();
+        Watcher.Journal journal = Watcher.load(gitletDir);
+        Listing saved = readListing();
+        if (saved != null && saved.ignoreModified == ignoreModified
+                && Objects.equals(saved.sparse, sparseText)) {
+            // the journal covers every file created or deleted before it was written
+            Set<String> changed = journal == null || dirModified > journal.getWrittenAt()
+                    ? null : journal.changedSince(saved.mark);
+            if (changed != null) {
+                return update(saved, changed, journal.mark());
+            }
+            if (saved.dirModified == dirModified && saved.listedAt - dirModified > RACY_MILLIS) {
+                return saved.names;
+            }
+        }
+        Listing listing = new Listing();
+        listing.listedAt = System.currentTimeMillis();
+        listing.dirModified = dirModified;
+        listing.ignoreModified = ignoreModified;
+        listing.sparse = sparseText;
+        listing.mark = journal == null ? null : journal.mark();
+        listing.names = scan();
+        Utils.writeObject(listingFile, listing);
+        return listing.names;
+    }
+
+    /** Returns the saved listing, or null if there is none or it is from
+     *  an older version of this class. */
+    private Listing readListing() {
+        if (!listingFile.isFile()) {
+            return null;
+        }
+        try {
+            return Utils.readObject(listingFile, Listing.class);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Brings SAVED up to date with the journal position MARK by statting
+     *  only the CHANGED files, and saves it if anything moved. */
+    private HashSet<String> update(Listing saved, Set<String> changed, Watcher.Mark mark) {
+        if (mark.equals(saved.mark)) {
+            return saved.names;
+        }
+        IgnoreMatcher ignored = IgnoreMatcher.load(ignoreFile);
+        for (String name : changed) {
+            if (!ignored.matches(name, false) && inSparseSet(name)
+                    && Utils.join(cwd, name).isFile()) {
+                saved.names.add(name);
+            } else {
+                saved.names.remove(name);
+            }
+        }
+        saved.mark = mark;
+        saved.dirModified = cwd.lastModified();
+        saved.listedAt = System.currentTimeMillis();
+        Utils.writeObject(listingFile, saved);
+        return saved.names;
+    }
+
+    /** Lists the working directory, skipping ignored names and names
+     *  outside the sparse set before paying for the stat that tells plain
+     *  files from directories. */
+    private HashSet<String> scan() {
+        IgnoreMatcher ignored = IgnoreMatcher.load(ignoreFile);
+        long start = Trace.start();
+        String[] names = cwd.list();
+        HashSet<String> result = new HashSet<>();
+        if (names == null) {
+            return result;
+        }
+        for (String name : names) {
+            if (!ignored.matches(name, false) && inSparseSet(name)
+                    && Utils.join(cwd, name).isFile()) {
+                result.add(name);
+            }
+        }
+        Trace.list(start, names.length);
+        return result;
+    }
+}
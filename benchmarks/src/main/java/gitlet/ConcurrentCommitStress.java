@@ -0,0 +1,174 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** Stress run of concurrent access to one repository: WRITERS processes
+ *  each change, add and commit a file of their own COMMITS times, while
+ *  READERS processes run log, status and global-log in a loop.  Every
+ *  command is a separate java gitlet.Main process, as in CI.
+ *  The run fails if any command fails or prints an exception, if any
+ *  commit is not reachable from the head afterwards (a lost update), or
+ *  if a writer's last version of its file is neither committed nor staged.
+ *  Usage: java -cp target/benchmarks.jar gitlet.ConcurrentCommitStress
+ *  [writers] [commits] [readers]
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+public class ConcurrentCommitStress {
+
+    /** This JVM's class path with absolute entries, since commands run in
+     *  the repository's directory. */
+    private static final String CLASS_PATH = Stream.of(
+            System.getProperty("java.class.path").split(File.pathSeparator))
+            .map(entry -> new File(entry).getAbsolutePath())
+            .collect(Collectors.joining(File.pathSeparator));
+
+    public static void main(String[] args) throws Exception {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int commits = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        File dir = Files.createTempDirectory("gitlet-stress").toFile();
+        List<String> failures = new ArrayList<>();
+        long start = System.nanoTime();
+        AtomicInteger readerRuns = new AtomicInteger();
+        try {
+            run(dir, failures, "init");
+            AtomicBoolean writing = new AtomicBoolean(true);
+            ExecutorService pool = Executors.newFixedThreadPool(writers + readers);
+            List<Future<?>> writerTasks = new ArrayList<>();
+            for (int w = 0; w < writers; w += 1) {
+                int writer = w;
+                writerTasks.add(pool.submit(() -> {
+                    for (int k = 0; k < commits; k += 1) {
+                        String fileName = "w" + writer + ".txt";
+                        Utils.writeContents(Utils.join(dir, fileName), version(writer, k));
+                        run(dir, failures, "add", fileName);
+                        run(dir, failures, "commit", "writer " + writer + " commit " + k);
+                    }
+                }));
+            }
+            List<Future<?>> readerTasks = new ArrayList<>();
+            String[][] reads = {{"log"}, {"status"}, {"global-log"}};
+            for (int r = 0; r < readers; r += 1) {
+                readerTasks.add(pool.submit(() -> {
+                    for (int i = 0; writing.get(); i += 1) {
+                        run(dir, failures, reads[i % reads.length]);
+                        readerRuns.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> task : writerTasks) {
+                task.get();
+            }
+            writing.set(false);
+            for (Future<?> task : readerTasks) {
+                task.get();
+            }
+            pool.shutdown();
+            if (failures.isEmpty()) {
+                check(dir, writers, commits, failures);
+            }
+        } finally {
+            delete(dir);
+        }
+
+        System.out.printf("%d writers x %d commits, %d reader runs, %.1f s%n",
+                writers, commits, readerRuns.get(), (System.nanoTime() - start) / 1e9);
+        if (!failures.isEmpty()) {
+            failures.forEach(System.out::println);
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /** The contents of writer W's file after its Kth change. */
+    private static String version(int w, int k) {
+        return "writer " + w + " version " + k + "\n";
+    }
+
+    /** Runs gitlet COMMAND in DIR in a fresh JVM, recording any failure in FAILURES. */
+    private static void run(File dir, List<String> failures, String... command) {
+        List<String> line = new ArrayList<>();
+        line.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        line.add("-cp");
+        line.add(CLASS_PATH);
+        line.add("gitlet.Main");
+        line.addAll(List.of(command));
+        try {
+            Process process = new ProcessBuilder(line).directory(dir).redirectErrorStream(true).start();
+            String output;
+            try (InputStream in = process.getInputStream()) {
+                output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            int status = process.waitFor();
+            if (status != 0 || output.contains("Exception")
+                    || (command[0].equals("status") && !output.startsWith("=== Branches ==="))) {
+                synchronized (failures) {
+                    failures.add(String.join(" ", command) + " exited " + status + ": " + output);
+                }
+            }
+        } catch (IOException | InterruptedException excp) {
+            synchronized (failures) {
+                failures.add(String.join(" ", command) + ": " + excp);
+            }
+        }
+    }
+
+    /** Checks the repository in DIR once all writers are done. */
+    private static void check(File dir, int writers, int commits, List<String> failures) {
+        Repository repo = new Repository(dir);
+        Map<String, Commit> all = repo.getAllCommits();
+        Commit head = repo.getHead();
+
+        Set<String> reachable = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.push(head.getCommitId());
+        while (!toVisit.isEmpty()) {
+            Commit commit = all.get(toVisit.pop());
+            if (commit != null && reachable.add(commit.getCommitId()) && commit.getParent() != null) {
+                toVisit.push(commit.getParent());
+            }
+        }
+        if (reachable.size() != all.size()) {
+            failures.add((all.size() - reachable.size()) + " of " + all.size()
+                    + " commits are not reachable from the head");
+        }
+
+        Map<String, String> tracked = new HashMap<>(head.getBlobs());
+        tracked.putAll(repo.loadStagingArea().getFilesToAdd());
+        for (int w = 0; w < writers; w += 1) {
+            String expected = Hashing.hashBlob(repo.objectFormat(),
+                    version(w, commits - 1).getBytes(StandardCharsets.UTF_8));
+            if (!expected.equals(tracked.get("w" + w + ".txt"))) {
+                failures.add("writer " + w + "'s last version was lost");
+            }
+        }
+    }
+
+    private static void delete(File dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
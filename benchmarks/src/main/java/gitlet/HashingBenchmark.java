@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Throughput of Hashing against the original Utils.sha1, which looked up
+ *  a new MessageDigest and formatted the digest with a Formatter on every
+ *  call, and of hashing files one by one against hashing them in parallel.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashingBenchmark {
+
+    /** Size in bytes of each hashed payload and file. */
+    @Param({"64", "4096", "1048576"})
+    public int size;
+
+    /** Number of files hashed by the file benchmarks. */
+    @Param({"64"})
+    public int fileCount;
+
+    private byte[] payload;
+    private File dir;
+    private List<File> files;
+
+    @Setup(Level.Trial)
+    public void createPayloads() throws IOException {
+        Random random = new Random(42);
+        payload = new byte[size];
+        random.nextBytes(payload);
+        dir = Files.createTempDirectory("gitlet-hash").toFile();
+        files = new ArrayList<>();
+        for (int i = 0; i < fileCount; i += 1) {
+            byte[] contents = new byte[size];
+            random.nextBytes(contents);
+            File file = Utils.join(dir, "f" + i);
+            Utils.writeContents(file, contents);
+            files.add(file);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deletePayloads() {
+        for (File file : files) {
+            file.delete();
+        }
+        if (!dir.delete()) {
+            throw new UncheckedIOException(new IOException("could not delete " + dir));
+        }
+    }
+
+    /** The original Utils.sha1, kept here as the baseline. */
+    private static String originalSha1(Object... vals) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            for (Object val : vals) {
+                md.update((byte[]) val);
+            }
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    @Benchmark
+    public String originalUtilsSha1() {
+        return originalSha1(payload);
+    }
+
+    @Benchmark
+    public String sha1() {
+        return Hashing.hash(Hashing.SHA1, payload);
+    }
+
+    @Benchmark
+    public String sha256() {
+        return Hashing.hash(Hashing.SHA256, payload);
+    }
+
+    @Benchmark
+    public String readAndHashFiles() {
+        String last = null;
+        for (File file : files) {
+            last = originalSha1(Utils.readContents(file));
+        }
+        return last;
+    }
+
+    @Benchmark
+    public String streamFiles() {
+        String last = null;
+        for (File file : files) {
+            last = Hashing.hashBlob(Hashing.SHA1, file);
+        }
+        return last;
+    }
+
+    @Benchmark
+    public Map<File, String> streamFilesInParallel() {
+        return Hashing.hashFiles(Hashing.SHA1, files);
+    }
+}
@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the hashing and serialization primitives in Utils.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitivesBenchmark {
+
+    /** Size in bytes of the hashed and serialized payloads. */
+    @Param({"1024", "1048576"})
+    public int size;
+
+    /** Number of entries in the serialized commit. */
+    @Param({"1000"})
+    public int commitFiles;
+
+    private byte[] payload;
+    private Commit commit;
+    private File serialized;
+
+    @Setup(Level.Trial)
+    public void createPayloads() throws IOException {
+        payload = new byte[size];
+        new Random(42).nextBytes(payload);
+        commit = new Commit("benchmark", null, null);
+        Map<String, String> blobs = new HashMap<>();
+        for (int i = 0; i < commitFiles; i += 1) {
+            blobs.put(SyntheticRepository.fileName(i), Utils.sha1("blob" + i));
+        }
+        commit.setBlobs(blobs);
+        serialized = File.createTempFile("gitlet-bench", ".obj");
+        Utils.writeObject(serialized, payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void deletePayloads() {
+        if (!serialized.delete()) {
+            throw new UncheckedIOException(new IOException("could not delete " + serialized));
+        }
+    }
+
+    @Benchmark
+    public String sha1() {
+        return Utils.sha1(payload);
+    }
+
+    @Benchmark
+    public byte[] serializeBytes() {
+        return Utils.serialize(payload);
+    }
+
+    @Benchmark
+    public byte[] serializeCommit() {
+        return Utils.serialize(commit);
+    }
+
+    @Benchmark
+    public byte[] readObject() {
+        return Utils.readObject(serialized, byte[].class);
+    }
+}
@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of each Repository command against synthetic repositories.
+ *  Every benchmark gets a freshly generated repository.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    /** The generated repository and the parameters describing its shape. */
+    @State(Scope.Thread)
+    public static class Shape {
+        @Param({"10", "1000"})
+        public int fileCount;
+
+        @Param({"1024", "65536"})
+        public int fileSize;
+
+        @Param({"10", "100"})
+        public int commitCount;
+
+        @Param({"2"})
+        public int branchCount;
+
+        SyntheticRepository synthetic;
+        Repository repo;
+        /** Commit ids that the reset benchmark alternates between. */
+        String[] resetTargets;
+        /** Number of switch/reset invocations so far, used to alternate targets. */
+        int toggles;
+        private PrintStream stdout;
+
+        @Setup(Level.Trial)
+        public void create() {
+            stdout = SyntheticRepository.silenceStdout();
+            synthetic = new SyntheticRepository(fileCount, fileSize, commitCount, branchCount);
+            repo = synthetic.repo;
+            Commit head = repo.getHead();
+            resetTargets = new String[] {head.getParent(), head.getCommitId()};
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            synthetic.delete();
+            System.setOut(stdout);
+        }
+    }
+
+    /** State for benchmarks that need a modified file before each call.
+     *  The benchmark reaches the repository through this state rather than
+     *  taking a Shape of its own, which JMH would instantiate separately. */
+    @State(Scope.Thread)
+    public static class ModifiedFile {
+        Shape shape;
+
+        @Setup(Level.Invocation)
+        public void modify(Shape shape) {
+            this.shape = shape;
+            shape.synthetic.rewrite(SyntheticRepository.fileName(0));
+        }
+    }
+
+    /** State for benchmarks that need a staged change before each call. */
+    @State(Scope.Thread)
+    public static class StagedChange {
+        Shape shape;
+
+        @Setup(Level.Invocation)
+        public void stage(Shape shape) {
+            this.shape = shape;
+            shape.synthetic.rewrite(SyntheticRepository.fileName(0));
+            shape.repo.add(SyntheticRepository.fileName(0));
+        }
+    }
+
+    /** State for benchmarks that need a tracked file, unmodified and not
+     *  staged for removal, before each call. */
+    @State(Scope.Thread)
+    public static class TrackedFile {
+        Shape shape;
+
+        @Setup(Level.Invocation)
+        public void restore(Shape shape) {
+            this.shape = shape;
+            shape.repo.restore(SyntheticRepository.fileName(0));
+        }
+    }
+
+    /** State for benchmarks that need branch "extra" not to exist before
+     *  each call. */
+    @State(Scope.Thread)
+    public static class NoExtraBranch {
+        Shape shape;
+
+        @Setup(Level.Invocation)
+        public void remove(Shape shape) {
+            this.shape = shape;
+            if (shape.repo.getAllBranches().containsKey("extra")) {
+                shape.repo.removeBranch("extra");
+            }
+        }
+    }
+
+    /** State for benchmarks that need branch "extra" to exist before each call. */
+    @State(Scope.Thread)
+    public static class ExtraBranch {
+        Shape shape;
+
+        @Setup(Level.Invocation)
+        public void create(Shape shape) {
+            this.shape = shape;
+            if (!shape.repo.getAllBranches().containsKey("extra")) {
+                shape.repo.branch("extra");
+            }
+        }
+    }
+
+    @Benchmark
+    public void add(ModifiedFile modified) {
+        modified.shape.repo.add(SyntheticRepository.fileName(0));
+    }
+
+    @Benchmark
+    public void commit(StagedChange staged) {
+        staged.shape.repo.commit("benchmark commit");
+    }
+
+    @Benchmark
+    public void rm(TrackedFile tracked) {
+        tracked.shape.repo.rm(SyntheticRepository.fileName(0));
+    }
+
+    @Benchmark
+    public void restore(ModifiedFile modified) {
+        modified.shape.repo.restore(SyntheticRepository.fileName(0));
+    }
+
+    @Benchmark
+    public void restoreFromCommit(Shape shape) {
+        shape.repo.restore(shape.resetTargets[0], SyntheticRepository.fileName(0));
+    }
+
+    @Benchmark
+    public void log(Shape shape) {
+        shape.repo.log();
+    }
+
+    @Benchmark
+    public void globalLog(Shape shape) {
+        shape.repo.globalLog();
+    }
+
+    @Benchmark
+    public void find(Shape shape) {
+        shape.repo.find("commit 1");
+    }
+
+    @Benchmark
+    public void branch(NoExtraBranch none) {
+        none.shape.repo.branch("extra");
+    }
+
+    @Benchmark
+    public void rmBranch(ExtraBranch extra) {
+        extra.shape.repo.removeBranch("extra");
+    }
+
+    @Benchmark
+    public void status(Shape shape) {
+        shape.repo.status();
+    }
+
+    @Benchmark
+    public void switchBranch(Shape shape) {
+        shape.toggles += 1;
+        shape.repo.switchBranch(shape.toggles % 2 == 1 ? "b0" : "main");
+    }
+
+    @Benchmark
+    public void reset(Shape shape) {
+        shape.toggles += 1;
+        shape.repo.reset(shape.resetTargets[shape.toggles % 2]);
+    }
+}
@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Builds throwaway repositories of a given shape for the benchmarks:
+ *  FILECOUNT files of FILESIZE bytes, COMMITCOUNT commits on main that each
+ *  change one file, and BRANCHCOUNT branches b0, b1, ... that each add one
+ *  commit of their own on top of main.
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+class SyntheticRepository {
+
+    /** The working directory of the repository. */
+    final File dir;
+    /** The repository itself. */
+    final Repository repo;
+    final int fileCount;
+    final int fileSize;
+
+    private final Random random = new Random(42);
+
+    SyntheticRepository(int fileCount, int fileSize, int commitCount, int branchCount) {
+        this.fileCount = fileCount;
+        this.fileSize = fileSize;
+        try {
+            dir = Files.createTempDirectory("gitlet-bench").toFile();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+        repo = new Repository(dir);
+        repo.init();
+
+        for (int i = 0; i < fileCount; i += 1) {
+            rewrite(fileName(i));
+            repo.add(fileName(i));
+        }
+        repo.commit("initial files");
+        for (int i = 1; i < commitCount; i += 1) {
+            String fileName = fileName(i % fileCount);
+            rewrite(fileName);
+            repo.add(fileName);
+            repo.commit("commit " + i);
+        }
+        for (int i = 0; i < branchCount; i += 1) {
+            repo.branch("b" + i);
+            repo.switchBranch("b" + i);
+            rewrite(fileName(i % fileCount));
+            repo.add(fileName(i % fileCount));
+            repo.commit("branch commit " + i);
+            repo.switchBranch("main");
+        }
+    }
+
+    /** The name of the Ith file. */
+    static String fileName(int i) {
+        return "f" + i + ".txt";
+    }
+
+    /** Overwrites FILENAME with fresh random text. */
+    void rewrite(String fileName) {
+        char[] text = new char[fileSize];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = (i % 64 == 63) ? '\n' : (char) ('a' + random.nextInt(26));
+        }
+        Utils.writeContents(Utils.join(dir, fileName), new String(text));
+    }
+
+    /** Deletes the repository from disk. */
+    void delete() {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Sends System.out to nowhere, returning the stream it replaced, so that
+     *  commands' output does not end up in the benchmark results. */
+    static PrintStream silenceStdout() {
+        PrintStream old = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return old;
+    }
+}
@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** Check that add . stages a file changed just before it while a watcher
+ *  runs, before the watcher has written the change to its journal.  A
+ *  watcher runs in a separate java gitlet.Main watch process; this process
+ *  then changes one of FILES files and calls addAll straight away, ROUNDS
+ *  times, and checks each time that the new version was staged.
+ *  The run fails if any round leaves the change unstaged.
+ *  Usage: java -cp target/benchmarks.jar gitlet.WatcherAddAllCheck
+ *  [rounds] [files]
+ *  @author Morgan Sinnock & Conrad Ehlers */
+
+public class WatcherAddAllCheck {
+
+    /** This JVM's class path with absolute entries, since the watcher runs
+     *  in the repository's directory. */
+    private static final String CLASS_PATH = Stream.of(
+            System.getProperty("java.class.path").split(File.pathSeparator))
+            .map(entry -> new File(entry).getAbsolutePath())
+            .collect(Collectors.joining(File.pathSeparator));
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        File dir = Files.createTempDirectory("gitlet-watch").toFile();
+        File gitletDir = Utils.join(dir, ".gitlet");
+        List<String> failures = new ArrayList<>();
+        Process watcher = null;
+        long start = System.nanoTime();
+        try {
+            Repository repo = new Repository(dir);
+            repo.init();
+            for (int i = 0; i < files; i += 1) {
+                Utils.writeContents(Utils.join(dir, fileName(i)), "file " + i + "\n");
+            }
+            watcher = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", CLASS_PATH, "gitlet.Main", "watch")
+                    .directory(dir).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            for (int wait = 0; Watcher.load(gitletDir) == null; wait += 1) {
+                if (wait == 500 || !watcher.isAlive()) {
+                    throw new IllegalStateException("the watcher did not start");
+                }
+                Thread.sleep(10);
+            }
+            // the first add . hashes everything and saves the journal's mark
+            repo.addAll();
+            repo.commit("all files");
+
+            for (int round = 0; round < rounds; round += 1) {
+                String fileName = fileName(round % files);
+                String contents = "round " + round + "\n";
+                Utils.writeContents(Utils.join(dir, fileName), contents);
+                repo.addAll();
+                String expected = Hashing.hashBlob(repo.objectFormat(),
+                        contents.getBytes(StandardCharsets.UTF_8));
+                if (!expected.equals(repo.loadStagingArea().getFilesToAdd().get(fileName))) {
+                    failures.add("round " + round + ": " + fileName + " was not staged");
+                }
+            }
+        } finally {
+            if (watcher != null) {
+                watcher.destroy();
+                watcher.waitFor();
+            }
+            delete(dir);
+        }
+
+        System.out.printf("%d rounds over %d files, %.1f s%n",
+                rounds, files, (System.nanoTime() - start) / 1e9);
+        if (!failures.isEmpty()) {
+            failures.forEach(System.out::println);
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /** The name of the Ith file. */
+    private static String fileName(int i) {
+        return "f" + i + ".txt";
+    }
+
+    private static void delete(File dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}